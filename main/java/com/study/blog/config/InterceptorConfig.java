@@ -1,5 +1,6 @@
 package com.study.blog.config;
 
+import com.study.blog.interceptor.RequestDeadlineInterceptor;
 import com.study.blog.interceptor.ValidateLoginAuthInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -14,6 +15,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class InterceptorConfig implements WebMvcConfigurer {
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestDeadlineInterceptor());
         registry.addInterceptor(new ValidateLoginAuthInterceptor());
     }
 }
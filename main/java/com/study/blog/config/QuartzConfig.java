@@ -1,8 +1,10 @@
 package com.study.blog.config;
 
 import com.study.blog.job.BlogEvaluationQuartzJob;
+import com.study.blog.job.EsOutboxQuartzJob;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -16,6 +18,7 @@ public class QuartzConfig {
      * 设置 标识：trigger 与 jobDetail 的标识
      */
     private static final String BLOG_EVALUATION_QUARTZ_IDENTITY = "BlogEvaluationQuartzIdentity";
+    private static final String ES_OUTBOX_QUARTZ_IDENTITY = "EsOutboxQuartzIdentity";
 
     @Bean
     public JobDetail quartzJobDetail() {
@@ -31,17 +34,21 @@ public class QuartzConfig {
                 .build();
     }
 
+    /**
+     * 指标量以增量写入数据库（read_count = read_count + ?），可以频繁执行
+     *
+     * @param intervalSeconds 执行间隔（秒）
+     * @return trigger
+     */
     @Bean
-    public Trigger quartzTrigger() {
+    public Trigger quartzTrigger(@Value("${blog.evaluation.flush.interval-seconds:5}") int intervalSeconds) {
         // 设置 定时机制
         SimpleScheduleBuilder simpleScheduleBuilder = SimpleScheduleBuilder
                 .simpleSchedule()
                 // 永久重复
                 .repeatForever()
-                // 1min 重复一次
-                //.withIntervalInMinutes(1)
-                // 1h 重复一次
-                .withIntervalInHours(1);
+                // 每 intervalSeconds 秒重复一次
+                .withIntervalInSeconds(intervalSeconds);
 
 
         return TriggerBuilder.newTrigger()
@@ -55,4 +62,28 @@ public class QuartzConfig {
                 .build();
     }
 
+    @Bean
+    public JobDetail esOutboxJobDetail() {
+        return JobBuilder.newJob(EsOutboxQuartzJob.class)
+                .withIdentity(ES_OUTBOX_QUARTZ_IDENTITY)
+                .storeDurably()
+                .build();
+    }
+
+    /**
+     * 博客同步到 ES 的延迟：最多 intervalSeconds 秒
+     *
+     * @param intervalSeconds 执行间隔（秒）
+     * @return trigger
+     */
+    @Bean
+    public Trigger esOutboxTrigger(@Value("${es.outbox.interval-seconds:1}") int intervalSeconds) {
+        return TriggerBuilder.newTrigger()
+                .forJob(esOutboxJobDetail())
+                .withIdentity(ES_OUTBOX_QUARTZ_IDENTITY)
+                .withSchedule(SimpleScheduleBuilder.simpleSchedule().repeatForever()
+                        .withIntervalInSeconds(intervalSeconds))
+                .build();
+    }
+
 }
@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 /**
  * @author 10652
@@ -30,6 +31,19 @@ public class RedisConfig {
         return redisTemplate;
     }
 
+    /**
+     * Redis 消息监听容器：订阅集群单飞的解锁通知
+     *
+     * @param cf redis 连接工厂
+     * @return container
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory cf) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(cf);
+        return container;
+    }
+
     /**
      * 以下设置：似乎默认就是这样
      *
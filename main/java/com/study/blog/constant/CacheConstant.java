@@ -19,28 +19,99 @@ public class CacheConstant {
     public static final String COMMENT = "EVALUATION_COMMENT";
     /**
      * 评论量
+     *
+     * @deprecated 已迁移到 EVALUATION（每个博客一个 hash），只用于迁移旧数据
      */
+    @Deprecated
     public static final String COMMENT_COUNT = "EVALUATION_COMMENT_COUNT";
     /**
      * 点赞
      */
     public static final String VOTE = "EVALUATION_VOTE";
 
+    /**
+     * 点赞者：VOTER:{blogId} -> hash { userId: voteId }，字段 0 为已加载标记（用于区分 未点赞 与 尚未加载）
+     */
+    public static final String VOTER = "VOTER";
+
+    /**
+     * 点赞通知频道：各节点将 userId 加入本地的点赞者过滤器
+     */
+    public static final String VOTER_FILTER_CHANNEL = "VOTER_FILTER_CHANNEL";
+
+    /**
+     * voteId 计数器：启动时设置为不小于数据库中的最大 id，各节点按号段（INCRBY）领取
+     */
+    public static final String VOTE_ID = "VOTE_ID";
+
+    /**
+     * commentId 计数器：同 VOTE_ID
+     */
+    public static final String COMMENT_ID = "COMMENT_ID";
+
+    /**
+     * 新增 / 删除、待写入数据库的 blogId:commentId 集合
+     */
+    public static final String COMMENT_PENDING = "COMMENT_PENDING";
+
+    /**
+     * 评论索引：COMMENT_INDEX:{blogId} -> zset { commentId: 发表时间 }，评论内容在 COMMENT hash 中
+     */
+    public static final String COMMENT_INDEX = "COMMENT_INDEX";
+
+    /**
+     * 点赞状态发生变化、待写入数据库的 blogId:userId 集合
+     * 写入中的成员在 VOTE_PENDING_FLUSHING:runId 中，写入登记在 VOTE_PENDING_RUNS 中（COMMENT_PENDING 同）
+     */
+    public static final String VOTE_PENDING = "VOTE_PENDING";
+
     /**
      * user id
      */
     public static final String USER_ID = "\"userId\"";
     /**
      * 点赞量
+     *
+     * @deprecated 已迁移到 EVALUATION（每个博客一个 hash），只用于迁移旧数据
      */
+    @Deprecated
     public static final String VOTE_COUNT = "EVALUATION_VOTE_COUNT";
     /**
      * 阅读量
+     *
+     * @deprecated 已迁移到 EVALUATION（每个博客一个 hash），只用于迁移旧数据
      */
+    @Deprecated
     public static final String READING_COUNT = "EVALUATION_READING_COUNT";
 
     /**
-     * blog 不存在的 key
+     * 指标量：EVAL:{blogId} -> hash { read: 阅读量, comment: 评论量, vote: 点赞量 }
+     */
+    public static final String EVALUATION = "EVAL";
+
+    /**
+     * 指标量发生变化、待写入数据库的 blogId 集合
+     */
+    public static final String EVALUATION_DIRTY = "EVAL_DIRTY";
+
+    /**
+     * 正在写入数据库的 blogId 集合：EVAL_FLUSHING:runId，每次刷新一个，由 EVALUATION_DIRTY 转入
+     */
+    public static final String EVALUATION_FLUSHING = "EVAL_FLUSHING";
+
+    /**
+     * 正在进行的刷新：hash { runId: 开始时间 }，超过租期仍未完成的刷新由之后的刷新接管
+     */
+    public static final String EVALUATION_FLUSH_RUNS = "EVAL_FLUSH_RUNS";
+
+    /**
+     * 旧数据迁移：已完成标记（存在时各节点启动时不再迁移）与 迁移中的锁（同一时刻只有一个节点迁移）
+     */
+    public static final String EVALUATION_MIGRATED = "EVAL_MIGRATED";
+    public static final String EVALUATION_MIGRATING = "EVAL_MIGRATING";
+
+    /**
+     * blog 不存在的 key（空数据标记）：BLOG_ABSENT:{blogId}
      */
     public static final String BLOG_ABSENT = "BLOG_ABSENT";
 
@@ -54,4 +125,44 @@ public class CacheConstant {
      */
     public static final int NULL = -1;
 
+    /**
+     * 博客本地缓存失效通知频道
+     */
+    public static final String BLOG_INVALIDATION_CHANNEL = "BLOG_INVALIDATION_CHANNEL";
+
+    /**
+     * 集群单飞：分布式锁
+     */
+    public static final String SINGLE_FLIGHT_LOCK = "SINGLE_FLIGHT_LOCK";
+
+    /**
+     * 集群单飞：fencing token 计数器
+     */
+    public static final String SINGLE_FLIGHT_TOKEN = "SINGLE_FLIGHT_TOKEN";
+
+    /**
+     * 集群单飞：已写入缓存的最大 fencing token
+     */
+    public static final String SINGLE_FLIGHT_FENCE = "SINGLE_FLIGHT_FENCE";
+
+    /**
+     * 集群单飞：解锁通知频道
+     */
+    public static final String SINGLE_FLIGHT_CHANNEL = "SINGLE_FLIGHT_CHANNEL";
+
+    /**
+     * 重建 ES 索引的进度：新索引名称 与 已写入的最大 blogId（中断后从此处继续）
+     */
+    public static final String ES_REINDEX_CHECKPOINT = "ES_REINDEX_CHECKPOINT";
+
+    /**
+     * 重建 ES 索引期间同步过的 blogId（set）：切换别名前后重放到新索引
+     */
+    public static final String ES_REINDEX_CHANGED = "ES_REINDEX_CHANGED";
+
+    /**
+     * ES outbox 同步的分布式锁：同一时刻只有一个节点同步
+     */
+    public static final String ES_OUTBOX_LOCK = "ES_OUTBOX_LOCK";
+
 }
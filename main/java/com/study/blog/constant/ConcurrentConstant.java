@@ -19,25 +19,75 @@ public class ConcurrentConstant {
     public static final Integer LIMIT_FLOW = 1024;
 
     /**
-     * 默认每个线程 被阻塞 1 分钟（单位：纳秒）
+     * 默认每个线程 最多被阻塞 2 秒（单位：纳秒），同时不超过请求剩余的时间预算
      */
-    public static final long WAIT_TIMEOUT_N = 60000000000L;
+    public static final long WAIT_TIMEOUT_N = 2000000000L;
 
     /**
-     * 默认每个线程 被阻塞 1 分钟（单位：毫秒秒）
+     * 默认每个线程 最多被阻塞 2 秒（单位：毫秒），同时不超过请求剩余的时间预算
      */
-    public static final long WAIT_TIMEOUT_MILLS = 60000L;
+    public static final long WAIT_TIMEOUT_MILLS = 2000L;
 
     /**
-     * 默认每个线程 被阻塞 1 分钟（单位：分钟）
+     * 默认每个请求的时间预算 3 秒（单位：毫秒）
      */
-    public static final long WAIT_TIMEOUT_M = 1L;
+    public static final long REQUEST_BUDGET_MILLS = 3000L;
+
+    /**
+     * 上游传入剩余时间预算的请求头（单位：毫秒）
+     */
+    public static final String REQUEST_BUDGET_HEADER = "X-Request-Budget";
+
+    /**
+     * 自适应限流：初始 20 个线程访问数据库
+     */
+    public static final int LIMIT_INITIAL = 20;
+
+    /**
+     * 自适应限流：最少允许 4 个线程访问数据库
+     */
+    public static final int LIMIT_MIN = 4;
+
+    /**
+     * 自适应限流：最多允许 200 个线程访问数据库（与 Druid maxActive 一致，超过之后只会在连接池上排队）
+     */
+    public static final int LIMIT_MAX = 200;
+
+    /**
+     * 自适应限流：耗时超过 基准耗时 的 2 倍，视为数据库开始排队
+     */
+    public static final double LIMIT_LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * 自适应限流：排队 / 失败 时，limit 缩小为原来的 0.9
+     */
+    public static final double LIMIT_BACKOFF_RATIO = 0.9;
+
+    /**
+     * 自适应限流：每 100 次采样更新一次基准耗时
+     */
+    public static final int LIMIT_WINDOW = 100;
 
     /**
      * 默认自旋次数
      */
     public static final int SPIN_TIME = 4;
 
+    /**
+     * 集群单飞：分布式锁租约 10 秒（单位：毫秒），持有锁期间每 1/3 租约续约一次
+     */
+    public static final long SINGLE_FLIGHT_LEASE_MILLS = 10000L;
+
+    /**
+     * 集群单飞：等待其他节点刷新缓存 最多 3 秒（单位：毫秒），同时不超过请求剩余的时间预算
+     */
+    public static final long SINGLE_FLIGHT_WAIT_MILLS = 3000L;
+
+    /**
+     * 集群单飞：fencing token 记录保留 1 天（单位：毫秒）
+     */
+    public static final long SINGLE_FLIGHT_TOKEN_MILLS = 86400000L;
+
     /**
      * 错误提示信息
      */
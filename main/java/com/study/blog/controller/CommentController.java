@@ -1,6 +1,7 @@
 package com.study.blog.controller;
 
 import com.study.blog.annotation.ValidateAnnotation;
+import com.study.blog.dto.CommentPageDTO;
 import com.study.blog.entity.Comment;
 import com.study.blog.entity.ID;
 import com.study.blog.entity.User;
@@ -41,16 +42,23 @@ public class CommentController {
 
     /**
      * 获取评论列表：判断是否为评论所有者的逻辑似乎有点问题
+     * 分页获取：每次只渲染一页，nextCursor 不为 null 时页面显示 加载更多
      *
      * @param blogId 评论id
+     * @param cursor 上一页返回的游标：为空时获取第一页
+     * @param limit  每页条数
      * @param model  model
      * @return url
      */
     @GetMapping
-    public String listComment(@RequestParam("blogId") Long blogId, Model model) {
+    public String listComment(@RequestParam("blogId") Long blogId,
+                              @RequestParam(value = "cursor", required = false) String cursor,
+                              @RequestParam(value = "limit", required = false, defaultValue = "20") int limit,
+                              Model model) {
         log.info("评论列表！");
         // 缓存中获取：如果不存在 会自动从数据库中获取
-        List<Comment> comments = commentService.listComment(blogId);
+        CommentPageDTO page = commentService.listComment(blogId, cursor, limit);
+        List<Comment> comments = page.getComments();
         log.info("comments:{}", comments);
         /*
         * 判断操作用户是否为评论的所有者
@@ -67,7 +75,9 @@ public class CommentController {
         }
         model.addAttribute("commentOwner", commentOwner);
         model.addAttribute("comments", EntityTransfer.commentsToVOS(comments));
-        return "/userspace/blog::#mainContainerRepleace";
+        model.addAttribute("commentOffset", page.getOffset());
+        model.addAttribute("nextCursor", page.getNextCursor());
+        return "/userspace/blog::#commentList";
     }
 
     /**
@@ -215,9 +215,6 @@ public class UserSpaceController {
     @ValidateAnnotation(authorityId = 2)
     public String getBlogById(@PathVariable("username") String username, @PathVariable("id") Long id, Model
             model) {
-        // 每次查询阅读量增加一次：较为简易
-        blogService.readingIncrement(id);
-
         User principal = null;
         boolean isBlogOwner = false;
 
@@ -244,6 +241,8 @@ public class UserSpaceController {
         // long time = System.currentTimeMillis();
         Blog blog = blogService.getBlogById(id);
         // System.out.println("getBlog 总耗时：" + (System.currentTimeMillis() - time));
+        // 每次查询阅读量增加一次：博客存在（getBlogById 没有抛出异常）时才计入
+        blogService.readingIncrement(id);
 
         // log.info("blog:{}", blog);
         // 评论量、点赞量的设置：应该在 评论（点赞）有改动的时候设置
@@ -76,7 +76,7 @@ public class VoteController {
             return ResponseEntity.ok().body(new ResultVO(false, "您没有权限操作"));
         }
         try {
-            voteService.deleteVote(voteId, blogId);
+            voteService.deleteVote(voteId, blogId, userId);
             log.info("取消点赞成功");
 
         } catch (Throwable throwable) {
@@ -0,0 +1,28 @@
+package com.study.blog.dto;
+
+import com.study.blog.entity.Comment;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一页评论：按发表时间排序
+ *
+ * @author 10652
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentPageDTO {
+    private List<Comment> comments;
+    /**
+     * 本页第一条评论的排名（从 0 开始）：用于显示楼层
+     */
+    private Long offset;
+    /**
+     * 下一页的游标：没有下一页时为 null
+     */
+    private String nextCursor;
+}
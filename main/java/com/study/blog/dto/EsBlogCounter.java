@@ -0,0 +1,64 @@
+package com.study.blog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Objects;
+
+/**
+ * ES 中博客的 阅读量、评论量、点赞量：为 null 的指标量不更新
+ * 不可变：同一个博客的多次更新通过 merge 合并（后到的值覆盖先到的值）
+ *
+ * @author 10652
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class EsBlogCounter {
+    private final Long blogId;
+    private final Long readCount;
+    private final Long commentCount;
+    private final Long likeCount;
+    /**
+     * 已经尝试写入 ES 的次数
+     */
+    private final int attempts;
+
+    public static EsBlogCounter ofCounts(Long blogId, Long readCount, Long commentCount, Long likeCount) {
+        return new EsBlogCounter(blogId, readCount, commentCount, likeCount, 0);
+    }
+
+    public static EsBlogCounter ofReadCount(Long blogId, Long readCount) {
+        return new EsBlogCounter(blogId, readCount, null, null, 0);
+    }
+
+    public static EsBlogCounter ofCommentCount(Long blogId, Long commentCount) {
+        return new EsBlogCounter(blogId, null, commentCount, null, 0);
+    }
+
+    public static EsBlogCounter ofLikeCount(Long blogId, Long likeCount) {
+        return new EsBlogCounter(blogId, null, null, likeCount, 0);
+    }
+
+    /**
+     * 合并：newer 中不为 null 的指标量覆盖当前值
+     *
+     * @param newer 后到的更新
+     * @return 合并之后的更新
+     */
+    public EsBlogCounter merge(EsBlogCounter newer) {
+        return new EsBlogCounter(blogId,
+                Objects.isNull(newer.readCount) ? readCount : newer.readCount,
+                Objects.isNull(newer.commentCount) ? commentCount : newer.commentCount,
+                Objects.isNull(newer.likeCount) ? likeCount : newer.likeCount,
+                Math.max(attempts, newer.attempts));
+    }
+
+    /**
+     * @return 写入失败，尝试次数 +1
+     */
+    public EsBlogCounter retried() {
+        return new EsBlogCounter(blogId, readCount, commentCount, likeCount, attempts + 1);
+    }
+}
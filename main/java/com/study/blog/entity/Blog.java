@@ -103,6 +103,31 @@ public class Blog {
         }
     }
 
+    /**
+     * 浅拷贝：直接复制字段，不经过 setContent（不会重新解析 md）
+     * <p>
+     * 本地缓存中的 blog 被多个请求共享，而展示博客时会修改其指标量，因此每次都返回一份拷贝
+     *
+     * @return blog
+     */
+    public Blog copy() {
+        Blog blog = new Blog();
+        blog.blogId = this.blogId;
+        blog.userId = this.userId;
+        blog.title = this.title;
+        blog.summary = this.summary;
+        blog.content = this.content;
+        blog.htmlContent = this.htmlContent;
+        blog.readCount = this.readCount;
+        blog.commentCount = this.commentCount;
+        blog.likeCount = this.likeCount;
+        blog.createTime = this.createTime;
+        blog.tags = this.tags;
+        blog.catalog = this.catalog;
+        blog.comments = this.comments;
+        return blog;
+    }
+
     /**
      * 设置content：包括 md content 以及 html content
      * 将 md content 转换为 html content
@@ -121,4 +146,13 @@ public class Blog {
         * */
         this.htmlContent = Processor.process(content);
     }
+
+    /**
+     * 只设置 md content，不转换为 html content：同步到 ES 的博客不需要 html content（见 returnEsBlog）
+     *
+     * @param content md content
+     */
+    public void setMdContent(String content) {
+        this.content = content;
+    }
 }
@@ -119,6 +119,8 @@ public class EsBlog implements Serializable {
 
     public EsBlog(Blog blog, User user) {
         BeanUtils.copyProperties(blog, this);
+        // 以 blogId 作为文档 id：重复写入同一篇博客时覆盖，而不是产生新文档
+        this.id = String.valueOf(blog.getBlogId());
         this.avatar = user.getAvatar();
         this.username = user.getUsername();
         // log.info("ES_BLOG_LIST:{}", avatar);
@@ -0,0 +1,25 @@
+package com.study.blog.entity;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 博客同步到 ES 的 outbox 记录：表结构见 resources/sql/es_outbox.sql
+ *
+ * @author 10652
+ */
+@Data
+public class EsOutbox {
+    private Long id;
+    private Long blogId;
+    /**
+     * 同步失败的次数
+     */
+    private Integer attempts;
+    /**
+     * 死信：失败次数达到上限，不再同步
+     */
+    private Boolean dead;
+    private Date createTime;
+}
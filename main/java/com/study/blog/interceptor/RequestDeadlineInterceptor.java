@@ -0,0 +1,42 @@
+package com.study.blog.interceptor;
+
+import com.study.blog.constant.ConcurrentConstant;
+import com.study.blog.util.RequestDeadline;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @author 10652
+ * <p>
+ * 请求时间预算：请求开始时设置截止时间，请求结束时清除
+ * 上游（网关 / 负载均衡）可以通过请求头传入剩余预算，但不会超过默认预算
+ */
+public class RequestDeadlineInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestDeadline.start(budgetMillis(request.getHeader(ConcurrentConstant.REQUEST_BUDGET_HEADER)));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        RequestDeadline.clear();
+    }
+
+    private long budgetMillis(String header) {
+        if (header == null) {
+            return ConcurrentConstant.REQUEST_BUDGET_MILLS;
+        }
+        try {
+            long budget = Long.parseLong(header.trim());
+            return budget > 0 ? Math.min(budget, ConcurrentConstant.REQUEST_BUDGET_MILLS)
+                    : ConcurrentConstant.REQUEST_BUDGET_MILLS;
+        } catch (NumberFormatException e) {
+            return ConcurrentConstant.REQUEST_BUDGET_MILLS;
+        }
+    }
+}
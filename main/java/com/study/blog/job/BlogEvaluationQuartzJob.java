@@ -2,15 +2,19 @@ package com.study.blog.job;
 
 import com.study.blog.service.BlogEvaluationCacheService;
 import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.quartz.QuartzJobBean;
 
 /**
+ * 指标量、点赞记录、评论写入数据库：上一次执行尚未结束时，不并发执行
+ *
  * @author 10652
  */
 @Slf4j
+@DisallowConcurrentExecution
 public class BlogEvaluationQuartzJob extends QuartzJobBean {
 
     private final BlogEvaluationCacheService cacheService;
@@ -24,6 +28,8 @@ public class BlogEvaluationQuartzJob extends QuartzJobBean {
     protected void executeInternal(JobExecutionContext jobExecutionContext) throws JobExecutionException {
         try {
             cacheService.saveBlogEvaluation2Mysql();
+            cacheService.saveVotes2Mysql();
+            cacheService.saveComments2Mysql();
         } catch (Throwable throwable) {
             log.error("【定时任务】持久化数据到mysql：{}", throwable.getMessage());
             throw new JobExecutionException("持久化数据到mysql：失败");
@@ -0,0 +1,36 @@
+package com.study.blog.job;
+
+import com.study.blog.service.impl.EsOutboxDispatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * 博客同步到 ES：上一次执行尚未结束时，不并发执行
+ *
+ * @author 10652
+ */
+@Slf4j
+@DisallowConcurrentExecution
+public class EsOutboxQuartzJob extends QuartzJobBean {
+
+    private final EsOutboxDispatcher dispatcher;
+
+    @Autowired
+    public EsOutboxQuartzJob(EsOutboxDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    protected void executeInternal(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        try {
+            dispatcher.dispatch();
+        } catch (Throwable throwable) {
+            log.error("【定时任务】同步博客到ES：{}", throwable.getMessage());
+            throw new JobExecutionException("同步博客到ES：失败");
+        }
+    }
+}
@@ -1,16 +1,16 @@
 package com.study.blog.lock;
 
 import com.study.blog.constant.ConcurrentConstant;
+import com.study.blog.exception.LimitFlowException;
 import com.study.blog.exception.NullBlogException;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * 【限流锁】
- * 1. Semaphore 实现流量限制
+ * 1. ConcurrencyLimiter 实现流量限制（默认 AimdConcurrencyLimiter：根据数据库耗时自适应调整）
  * 2. 借助唯一的 blogId 作为锁标志，将其存储在 HashMap 中
  * 3. 通过锁标志阻塞后续相同 博客 请求的线程
  * <p>
@@ -30,15 +30,31 @@ public abstract class AbstractLimitFlowLock {
     /**
      * 限制流量
      */
-    private Semaphore allowRequest;
+    private final ConcurrencyLimiter limiter;
+    /**
+     * 监控指标
+     */
+    private final LimitFlowLockMetrics metrics;
+    /**
+     * 记录获取许可证的时间：释放许可证时统计访问数据库的耗时
+     */
+    private final ThreadLocal<Long> permissionStart;
     /**
      * 优化策略：决定 线程 阻塞之前的自旋次数
      */
     private int spinTime;
 
 
-    AbstractLimitFlowLock() {
-        this.allowRequest = new Semaphore(ConcurrentConstant.ALLOW_PERMISSION);
+    AbstractLimitFlowLock(String name) {
+        this(name, new AimdConcurrencyLimiter(ConcurrentConstant.LIMIT_INITIAL, ConcurrentConstant.LIMIT_MIN,
+                ConcurrentConstant.LIMIT_MAX, ConcurrentConstant.LIMIT_LATENCY_TOLERANCE,
+                ConcurrentConstant.LIMIT_BACKOFF_RATIO, ConcurrentConstant.LIMIT_WINDOW));
+    }
+
+    AbstractLimitFlowLock(String name, ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+        this.metrics = new LimitFlowLockMetrics(name, limiter);
+        this.permissionStart = new ThreadLocal<>();
         spinTime = ConcurrentConstant.SPIN_TIME;
     }
 
@@ -63,15 +79,12 @@ public abstract class AbstractLimitFlowLock {
         if (allowOrWait(blogId, makeSureLock, spinningBlock)) {
             try {
                 if (dispatchPermission(makeSureLock)) {
-                    log.info("【获取许可证】thread:{}，BlogID:{}，剩余:{}",
-                            Test.thisThread(), blogId, allowRequest.availablePermits());
-                    // Thread.sleep(10000);
+                    metrics.acquired();
                     return true;
                 }
             } catch (InterruptedException e) {
                 log.error("【获取许可证】等待获取被中断");
             } catch (Exception sureLockException) {
-                log.info("【获取许可证】获取前 SureLock 异常");
                 releaseLock(blogId);
                 throw sureLockException;
             }
@@ -80,13 +93,70 @@ public abstract class AbstractLimitFlowLock {
         return false;
     }
 
+    /**
+     * 持有许可证执行 loader：获取许可证 -> 执行 loader -> 释放许可证
+     * <p>
+     * 流量达到限制 / 超时未获取 / 被中断：抛出 LimitFlowException
+     * loader 执行成功：向 limiter 反馈耗时；loader 抛出异常：视为过载
+     *
+     * @param blogId blogId
+     * @param loader 访问数据库
+     * @param <T>    结果类型
+     * @return loader 的结果
+     */
+    public <T> T withPermission(Long blogId, Supplier<T> loader) {
+        try {
+            if (!limiter.tryAcquire()) {
+                metrics.rejected();
+                throw new LimitFlowException("Blog:" + blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LimitFlowException("Blog:" + blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+        }
+        long start = System.nanoTime();
+        T value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            // 保证许可证被释放！
+            limiter.onDropped();
+            metrics.recordFill(System.nanoTime() - start);
+            throw e;
+        }
+        long latency = System.nanoTime() - start;
+        limiter.onSuccess(latency);
+        metrics.recordFill(latency);
+        return value;
+    }
+
     /**
      * 释放许可证
      * <p>
      * 获得许可证的线程访问完数据库之后，就应该立即释放许可证，提高系统的吞吐量！
      */
     public void releasePermission() {
-        allowRequest.release();
+        Long start = permissionStart.get();
+        permissionStart.remove();
+        long latency = Objects.isNull(start) ? 0L : System.nanoTime() - start;
+        limiter.onSuccess(latency);
+        if (latency > 0) {
+            metrics.recordFill(latency);
+        }
+    }
+
+    /**
+     * @return 流量限制器：当前限制、正在访问数据库的线程数、拒绝次数
+     */
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return 监控指标
+     */
+    LimitFlowLockMetrics metrics() {
+        return metrics;
     }
 
     /**
@@ -102,20 +172,25 @@ public abstract class AbstractLimitFlowLock {
 
     /**
      * 分发许可证：
-     * 1. queueLength：如果当前阻塞的线程数 达到 限制的数量：限流（返回 false）！
-     * 2. sureLock：如果当前缓存已更新，则不再需要获取许可证（返回 false）！
-     * 3. tryAcquire(timeout)：尝试获取许可证：tryAcquire
-     * （1）成功获取：返回 true
-     * （2）超时未获取：返回 false
+     * 1. sureLock：如果当前缓存已更新，则不再需要获取许可证（返回 false）！
+     * 2. limiter.tryAcquire：尝试获取许可证
+     * （1）成功获取：记录获取时间，返回 true
+     * （2）流量达到限制：返回 false
      *
      * @param makeSureLock 确认是否加锁
      * @return true：成功 获取 许可证，false：不获取许可证
      * @throws InterruptedException 阻塞中断
      */
     private boolean dispatchPermission(MakeSureLock makeSureLock) throws InterruptedException {
-        return allowRequest.getQueueLength() <= ConcurrentConstant.LIMIT_FLOW
-                && makeSureLock.sureLock()
-                && allowRequest.tryAcquire(ConcurrentConstant.WAIT_TIMEOUT_M, TimeUnit.MINUTES);
+        if (!makeSureLock.sureLock()) {
+            return false;
+        }
+        if (limiter.tryAcquire()) {
+            permissionStart.set(System.nanoTime());
+            return true;
+        }
+        metrics.rejected();
+        return false;
     }
 
     /**
@@ -136,7 +211,7 @@ public abstract class AbstractLimitFlowLock {
         if (tryLock(blogId)) {
             return true;
         }
-        log.info("被 阻塞：threadList:{}，BlogId:{}", Test.thisThread(), blogId);
+        metrics.coalesced();
         waitCache(blogId, makeSureLock, spinningBlock);
         return false;
     }
@@ -156,13 +231,14 @@ public abstract class AbstractLimitFlowLock {
             int spin = this.spinTime;
             while (spin-- > 0) {
                 if (!makeSureLock.sureLock()) {
-                    log.info("【限流】阻塞之前，缓存已更新：自旋：{}", 4 - spin);
+                    metrics.spinSucceeded();
                     return;
                 }
             }
-            log.info("【限流】阻塞之前，无缓存：阻塞");
         }
+        long start = System.nanoTime();
         blockWaitCache(blogId);
+        metrics.recordWait(start);
     }
 
     /**
@@ -198,39 +274,4 @@ public abstract class AbstractLimitFlowLock {
          */
         boolean sureLock() throws NullBlogException;
     }
-
-    /**
-     * 监控
-     */
-    static class Test {
-        private static AtomicInteger timeAve = new AtomicInteger(0);
-        private static AtomicInteger count = new AtomicInteger(0);
-
-        /**
-         * 测试耗时
-         *
-         * @return 起始时间
-         */
-        private static long startTime() {
-            return System.currentTimeMillis();
-        }
-
-        /**
-         * 测试耗时
-         *
-         * @param time time
-         */
-        private static void testWastTime(long time, boolean spin, long threadId) {
-            String msg = spin ? "自旋" : "阻塞";
-            System.out.println(msg + "：缓存已可用（" + threadId + "）WAST:" + (time = System.currentTimeMillis() - time));
-            System.out.println("平均耗时:" + timeAve.addAndGet((int) time) / count.addAndGet(1));
-        }
-
-        /**
-         * @return this threadId
-         */
-        static long thisThread() {
-            return Thread.currentThread().getId();
-        }
-    }
 }
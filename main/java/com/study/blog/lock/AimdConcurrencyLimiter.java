@@ -0,0 +1,152 @@
+package com.study.blog.lock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 【自适应并发限制器】AIMD（加性增、乘性减）
+ * 根据访问数据库的耗时，动态调整同一时间访问数据库的线程数：
+ * 1. 基准耗时：代表数据库无排队时的耗时，每个采样窗口结束时更新：
+ * （1）窗口最小耗时 更小：立即采用
+ * （2）窗口最小耗时 更大：每个窗口只向其靠近 1/BASELINE_DECAY，持续过载时基准耗时不会很快被抬高到过载时的耗时
+ * 2. 耗时 超过 基准耗时 * tolerance：说明数据库（连接池）开始排队 --> limit * backoffRatio
+ * 3. 耗时正常，并且正在访问数据库的线程数 达到 limit 的一半：说明 limit 可能偏小 --> limit + 1
+ * 4. 访问数据库失败：视为过载 --> limit * backoffRatio
+ * <p>
+ * 每个 RTT 最多缩小一次：开始时间早于上一次缩小的请求，反映的是缩小之前的 limit，不再重复缩小；
+ * 否则一次突发的慢请求会连续缩小，limit 直接跌到 minLimit（失败的请求按 基准耗时 估算开始时间）
+ * <p>
+ * 与 SemaphoreLimiter 的区别：不排队，达到 limit 时立即拒绝（快速失败），避免线程堆积在连接池上
+ *
+ * @author 10652
+ */
+public class AimdConcurrencyLimiter implements ConcurrencyLimiter {
+    /**
+     * 基准耗时每个窗口向更大的窗口最小耗时靠近 1/8
+     */
+    private static final int BASELINE_DECAY = 8;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final int window;
+
+    private final AtomicInteger inFlight;
+    private final AtomicLong rejected;
+    private volatile int limit;
+    /**
+     * 基准耗时（纳秒）：0 表示还没有采样
+     */
+    private long baselineLatency;
+    /**
+     * 当前采样窗口内的最小耗时
+     */
+    private long windowMinLatency;
+    private int windowSamples;
+    /**
+     * 上一次缩小 limit 的时间（纳秒）：0 表示还没有缩小过
+     */
+    private long lastDecreaseNanos;
+
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance,
+                                  double backoffRatio, int window) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.window = window;
+        this.inFlight = new AtomicInteger(0);
+        this.rejected = new AtomicLong(0);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowMinLatency = Long.MAX_VALUE;
+    }
+
+    /**
+     * CAS 获取许可证：正在访问数据库的线程数 达到 limit 时立即拒绝
+     *
+     * @return true：成功获取 false：流量达到限制
+     */
+    @Override
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    @Override
+    public void onSuccess(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        if (latencyNanos > 0) {
+            sample(latencyNanos, current);
+        }
+    }
+
+    @Override
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            decrease(now - baselineLatency, now);
+        }
+    }
+
+    /**
+     * 根据耗时调整 limit
+     *
+     * @param latencyNanos 耗时
+     * @param current      本线程释放之前，正在访问数据库的线程数
+     */
+    private synchronized void sample(long latencyNanos, int current) {
+        windowMinLatency = Math.min(windowMinLatency, latencyNanos);
+        if (baselineLatency == 0) {
+            baselineLatency = windowMinLatency;
+        } else if (++windowSamples >= window) {
+            baselineLatency = windowMinLatency <= baselineLatency ? windowMinLatency :
+                    baselineLatency + (windowMinLatency - baselineLatency) / BASELINE_DECAY;
+            windowMinLatency = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        if (latencyNanos > baselineLatency * tolerance) {
+            long now = System.nanoTime();
+            decrease(now - latencyNanos, now);
+        } else if (current * 2 >= limit && limit < maxLimit) {
+            limit = limit + 1;
+        }
+    }
+
+    /**
+     * 缩小 limit：请求开始于上一次缩小之前时忽略
+     *
+     * @param startNanos 请求开始的时间
+     * @param now        当前时间
+     */
+    private void decrease(long startNanos, long now) {
+        if (lastDecreaseNanos != 0 && startNanos - lastDecreaseNanos < 0) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, (int) (limit * backoffRatio));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+}
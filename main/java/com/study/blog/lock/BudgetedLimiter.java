@@ -0,0 +1,62 @@
+package com.study.blog.lock;
+
+/**
+ * 【分级并发限制器】
+ * 同时占用 域的子预算 与 全局预算：任何一级达到限制，都会被拒绝
+ * <p>
+ * 全局预算拒绝时，归还已占用的子预算（onSuccess(0)：不计入耗时采样）
+ *
+ * @author 10652
+ */
+public class BudgetedLimiter implements ConcurrencyLimiter {
+    private final ConcurrencyLimiter domain;
+    private final ConcurrencyLimiter global;
+
+    public BudgetedLimiter(ConcurrencyLimiter domain, ConcurrencyLimiter global) {
+        this.domain = domain;
+        this.global = global;
+    }
+
+    @Override
+    public boolean tryAcquire() throws InterruptedException {
+        if (!domain.tryAcquire()) {
+            return false;
+        }
+        boolean acquired = false;
+        try {
+            acquired = global.tryAcquire();
+        } finally {
+            if (!acquired) {
+                domain.onSuccess(0L);
+            }
+        }
+        return acquired;
+    }
+
+    @Override
+    public void onSuccess(long latencyNanos) {
+        global.onSuccess(latencyNanos);
+        domain.onSuccess(latencyNanos);
+    }
+
+    @Override
+    public void onDropped() {
+        global.onDropped();
+        domain.onDropped();
+    }
+
+    @Override
+    public int getLimit() {
+        return Math.min(domain.getLimit(), global.getLimit());
+    }
+
+    @Override
+    public int getInFlight() {
+        return domain.getInFlight();
+    }
+
+    @Override
+    public long getRejected() {
+        return domain.getRejected();
+    }
+}
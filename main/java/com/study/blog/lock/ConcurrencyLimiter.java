@@ -0,0 +1,47 @@
+package com.study.blog.lock;
+
+/**
+ * 【并发限制器】
+ * 限制同一时间访问数据库（刷新缓存）的线程数：
+ * 1. tryAcquire：获取许可证，流量达到限制时返回 false（由调用方抛出 LimitFlowException）
+ * 2. onSuccess：访问数据库成功，释放许可证，并反馈本次访问数据库的耗时
+ * 3. onDropped：访问数据库失败（如连接池等待超时），释放许可证，视为过载
+ *
+ * @author 10652
+ */
+public interface ConcurrencyLimiter {
+    /**
+     * 获取许可证
+     *
+     * @return true：成功获取 false：流量达到限制
+     * @throws InterruptedException 阻塞中断
+     */
+    boolean tryAcquire() throws InterruptedException;
+
+    /**
+     * 访问数据库成功：释放许可证
+     *
+     * @param latencyNanos 访问数据库的耗时（纳秒）：小于等于 0 表示未统计耗时
+     */
+    void onSuccess(long latencyNanos);
+
+    /**
+     * 访问数据库失败：释放许可证
+     */
+    void onDropped();
+
+    /**
+     * @return 当前的并发限制
+     */
+    int getLimit();
+
+    /**
+     * @return 当前正在访问数据库的线程数
+     */
+    int getInFlight();
+
+    /**
+     * @return 累计被拒绝的次数
+     */
+    long getRejected();
+}
@@ -0,0 +1,21 @@
+package com.study.blog.lock;
+
+/**
+ * 限流域：每个域拥有独立的限流锁与并发子预算，所有域共享一个全局的数据库并发预算
+ *
+ * @author 10652
+ */
+public enum LimitFlowDomain {
+    /**
+     * 博客正文
+     */
+    BLOG,
+    /**
+     * 博客指标量：阅读量、评论、点赞
+     */
+    EVALUATION,
+    /**
+     * 用户信息
+     */
+    USER
+}
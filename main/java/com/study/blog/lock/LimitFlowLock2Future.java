@@ -0,0 +1,244 @@
+package com.study.blog.lock;
+
+import com.study.blog.constant.ConcurrentConstant;
+import com.study.blog.exception.LimitFlowException;
+import com.study.blog.util.RequestDeadline;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 【限流锁】
+ * 1. ConcurrencyLimiter 实现流量限制
+ * 2. 借助唯一的 blogId 作为锁标志，并以 blogId-flight 作为 key-value 存储在 ConcurrentHashMap 中
+ * 3. 使用 CompletableFuture 实现线程的阻塞和唤醒：持有锁的线程 complete，阻塞的线程 get(timeout)
+ * <p>
+ * 与 LimitFlowLock2Wait / LimitFlowLock2Park 的区别：
+ * （1）加锁：putIfAbsent 原子操作，不再对整个 HashMap 加 synchronized，不同博客之间互不阻塞（ConcurrentHashMap 按桶加锁）
+ * （2）阻塞：不再依赖持有锁线程的 thread 实例的对象监视器，而是等待该 blogId 对应的 future 完成
+ * （3）唤醒：future.complete 唤醒所有阻塞线程，不存在 “判断锁标志之后、阻塞之前，锁被释放” 导致的无人唤醒问题
+ * <p>
+ * 如果线程请求的 blogId，在 ConcurrentHashMap 中不存在，则它将持有锁，主要负责如下工作：
+ * （1）负责创建 flight（putIfAbsent 成功）
+ * （2）负责访问数据库，刷新缓存
+ * （3）负责清除锁标志，并 complete flight 中的 future，唤醒所有阻塞的线程
+ * <p>
+ * 如果线程请求的 blogId，已经存在于 ConcurrentHashMap 中，则它将被阻塞，主要执行如下行为：
+ * （1）取出 flight，执行 future.get(timeout) 阻塞自己
+ * （2）被唤醒（超时自动苏醒）之后，查询缓存，取走数据
+ *
+ * @author 10652
+ */
+@Slf4j
+public class LimitFlowLock2Future extends AbstractLimitFlowLock {
+    /**
+     * 保存 blogId-flight 键值对：
+     * --> 以 blogId 作为锁标志
+     * --> 以 flight 记录持有锁的线程，以及阻塞线程等待的 future
+     */
+    private final ConcurrentHashMap<Long, Flight> allowRequestSet;
+
+    public LimitFlowLock2Future() {
+        this("future");
+    }
+
+    public LimitFlowLock2Future(String name) {
+        super(name);
+        this.allowRequestSet = new ConcurrentHashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
+    }
+
+    public LimitFlowLock2Future(String name, ConcurrencyLimiter limiter) {
+        super(name, limiter);
+        this.allowRequestSet = new ConcurrentHashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
+    }
+
+    /**
+     * 尝试加锁通行
+     * <p>
+     * 1. 先 get：锁已存在时，直接返回，不必为每个阻塞线程创建 flight
+     * 2. 再 putIfAbsent：原子操作，保证相同请求的线程中，只有一个线程加锁
+     *
+     * @param blogId blogId
+     * @return true：加锁成功    false：加锁失败
+     */
+    @Override
+    boolean tryLock(Long blogId) {
+        if (!Objects.isNull(allowRequestSet.get(blogId))) {
+            return false;
+        }
+        return Objects.isNull(allowRequestSet.putIfAbsent(blogId, new Flight(Thread.currentThread())));
+    }
+
+    /**
+     * 阻塞线程：等待持有锁的线程 complete future
+     * <p>
+     * 1. flight 为 null：锁已释放，缓存已可用，直接返回
+     * 2. flight 不为 null：future.get(timeout) 阻塞
+     * --> 即使锁在 get 之后被释放，future 也已经 complete，get 将立即返回，不会错过唤醒
+     *
+     * @param blogId blogId
+     */
+    @Override
+    void blockWaitCache(Long blogId) {
+        Flight flight = allowRequestSet.get(blogId);
+        if (Objects.isNull(flight)) {
+            return;
+        }
+        try {
+            flight.future.get(RequestDeadline.remainingNanos(ConcurrentConstant.WAIT_TIMEOUT_N), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // 重置中断标志：交由上层处理
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 持有锁的线程刷新缓存失败：被唤醒后自行查询缓存
+            log.debug("【阻塞】持有锁的线程刷新缓存失败：{}", e.getMessage());
+        } catch (TimeoutException e) {
+            metrics().timedOut();
+        }
+    }
+
+    /**
+     * 释放锁
+     * 1. 检测当前线程是否有资格释放锁：加锁的线程 与 当前线程不是同一个，拒绝释放！
+     * 2. 先清除锁标志，再 complete future：
+     * --> 清除之后到达的线程，将重新加锁（此时缓存已刷新，sureLock 将取消加锁）
+     * --> 清除之前到达的线程，持有的是同一个 future，complete 之后立即苏醒
+     *
+     * @param blogId blogId
+     */
+    @Override
+    void unLock(Long blogId) {
+        Flight flight = allowRequestSet.get(blogId);
+        if (Objects.isNull(flight)) {
+            log.error("【释放锁】：锁丢失");
+            return;
+        }
+        if (!Objects.equals(flight.owner, Thread.currentThread())) {
+            log.error("【释放锁】无权限：加锁 & 释放锁：不是同一个线程");
+            return;
+        }
+        allowRequestSet.remove(blogId, flight);
+        flight.future.complete(null);
+    }
+
+    /**
+     * 单飞加载：相同 blogId 的并发请求中，只有一个线程执行 loader，其余线程直接取走该线程加载的结果
+     * <p>
+     * 1. putIfAbsent 成功：持有锁
+     * （1）cacheReader 再次确认缓存：防止与刚释放锁的线程相互错过
+     * （2）缓存仍不存在：执行 loader（loader 通过 withPermission 获取许可证访问数据库）
+     * （3）complete future：将结果（或异常）交给所有阻塞的线程，然后清除锁标志
+     * <p>
+     * 2. putIfAbsent 失败：阻塞等待 future，苏醒后直接返回持有锁线程的结果，不再查询缓存
+     * （1）持有锁的线程抛出异常（如 NullBlogException）：阻塞的线程立即被唤醒，并抛出同一个异常
+     * （2）超时（min(WAIT_TIMEOUT_N, 请求剩余的时间预算)）/ 被中断：抛出 LimitFlowException
+     * <p>
+     * 注意：所有线程拿到的是同一个对象实例，调用方需要修改时先复制一份（如 BlogServiceImpl.getBlogById 中的 Blog.copy）
+     *
+     * @param blogId      blogId
+     * @param cacheReader 查询缓存：返回 null 表示缓存不存在
+     * @param loader      访问数据库，刷新缓存
+     * @param <T>         结果类型
+     * @return 缓存 或 loader 的结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(Long blogId, Supplier<T> cacheReader, Supplier<T> loader) {
+        Flight flight = new Flight(Thread.currentThread());
+        Flight exist = allowRequestSet.putIfAbsent(blogId, flight);
+        if (!Objects.isNull(exist)) {
+            metrics().coalesced();
+            long start = System.nanoTime();
+            try {
+                return (T) awaitFlight(blogId, exist);
+            } finally {
+                metrics().recordWait(start);
+            }
+        }
+        metrics().acquired();
+        try {
+            T value = cacheReader.get();
+            if (Objects.isNull(value)) {
+                value = loader.get();
+            }
+            flight.future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            flight.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 保证阻塞的线程一定被唤醒（如 loader 抛出 Error）
+            if (!flight.future.isDone()) {
+                flight.future.completeExceptionally(new LimitFlowException("Blog:" + blogId + " " +
+                        ConcurrentConstant.SYSTEM_BUSY_MSG));
+            }
+            allowRequestSet.remove(blogId, flight);
+        }
+    }
+
+    /**
+     * 单飞加载，并提供过期值兜底：
+     * 系统正忙（限流拒绝 / 等待超时）时，返回 staleReader 提供的过期值；过期值也不存在时，仍抛出 LimitFlowException
+     *
+     * @param blogId      blogId
+     * @param cacheReader 查询缓存：返回 null 表示缓存不存在
+     * @param loader      访问数据库，刷新缓存
+     * @param staleReader 过期值：返回 null 表示没有过期值
+     * @param <T>         结果类型
+     * @return 缓存 或 loader 的结果 或 过期值
+     */
+    public <T> T load(Long blogId, Supplier<T> cacheReader, Supplier<T> loader, Supplier<T> staleReader) {
+        try {
+            return load(blogId, cacheReader, loader);
+        } catch (LimitFlowException e) {
+            T stale = staleReader.get();
+            if (Objects.isNull(stale)) {
+                throw e;
+            }
+            log.debug("【限流】系统正忙，返回过期值：BlogId:{}", blogId);
+            return stale;
+        }
+    }
+
+    /**
+     * 阻塞等待持有锁的线程加载完成
+     *
+     * @param blogId blogId
+     * @param flight flight
+     * @return 持有锁的线程加载的结果
+     */
+    private Object awaitFlight(Long blogId, Flight flight) {
+        try {
+            return flight.future.get(RequestDeadline.remainingNanos(ConcurrentConstant.WAIT_TIMEOUT_N),
+                    TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            log.error("【阻塞】持有锁的线程刷新缓存失败：{}", e.getMessage());
+        } catch (TimeoutException e) {
+            metrics().timedOut();
+        }
+        throw new LimitFlowException("Blog:" + blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+    }
+
+    /**
+     * 一次 缓存刷新：持有锁的线程 + 阻塞线程等待的 future
+     */
+    static final class Flight {
+        final Thread owner;
+        final CompletableFuture<Object> future;
+
+        Flight(Thread owner) {
+            this.owner = owner;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
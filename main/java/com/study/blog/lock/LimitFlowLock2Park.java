@@ -1,6 +1,7 @@
 package com.study.blog.lock;
 
 import com.study.blog.constant.ConcurrentConstant;
+import com.study.blog.util.RequestDeadline;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
@@ -10,7 +11,7 @@ import java.util.concurrent.locks.LockSupport;
 
 /**
  * 【限流锁】
- * 1. Semaphore 实现流量限制
+ * 1. ConcurrencyLimiter 实现流量限制
  * 2. 借助唯一的 blogId 作为锁标志，并以 blogId-blockedThreadList 作为 key-value 存储在 HashMap 中
  * 3. 使用 LockSupport.park(timeout) - LockSupport.unpark(thread) 实现线程的阻塞和唤醒
  * <p>
@@ -36,7 +37,12 @@ public class LimitFlowLock2Park extends AbstractLimitFlowLock {
 
 
     public LimitFlowLock2Park() {
-        super();
+        super("park");
+        this.allowRequestSet = new HashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
+    }
+
+    public LimitFlowLock2Park(String name, ConcurrencyLimiter limiter) {
+        super(name, limiter);
         this.allowRequestSet = new HashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
     }
 
@@ -77,12 +83,18 @@ public class LimitFlowLock2Park extends AbstractLimitFlowLock {
      * --> 锁对象为 blockedThreadList，只会阻塞相同请求的 线程（同步块内，无耗时操作，相对耗时较少）
      * <p>
      * 2. 如果本线程加入了 blockedThreadList，则调用 LockSupport.parkNanos(timeout) 阻塞本线程
+     * --> timeout：min(WAIT_TIMEOUT_N, 请求剩余的时间预算)，请求已超时则不再阻塞
      * 注意：LockSupport.parkNanos 方法阻塞的线程，不会释放所持有的锁资源，因此，不能在同步块中调用！！！
      *
      * @param blogId blogId
      */
     @Override
     void blockWaitCache(Long blogId) {
+        long timeout = RequestDeadline.remainingNanos(ConcurrentConstant.WAIT_TIMEOUT_N);
+        if (timeout <= 0) {
+            // 请求已超时：不再阻塞
+            return;
+        }
         ArrayList<Thread> blockedThreadList;
         if (!Objects.isNull(blockedThreadList = allowRequestSet.get(blogId))) {
             synchronized (blockedThreadList) {
@@ -95,7 +107,11 @@ public class LimitFlowLock2Park extends AbstractLimitFlowLock {
                     return;
                 }
             }
-            LockSupport.parkNanos(Thread.currentThread(), ConcurrentConstant.WAIT_TIMEOUT_N);
+            LockSupport.parkNanos(Thread.currentThread(), timeout);
+            if (allowRequestSet.get(blogId) == blockedThreadList) {
+                // 苏醒之后，锁仍未释放：超时自动苏醒
+                metrics().timedOut();
+            }
         }
     }
 
@@ -1,6 +1,7 @@
 package com.study.blog.lock;
 
 import com.study.blog.constant.ConcurrentConstant;
+import com.study.blog.util.RequestDeadline;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.HashMap;
@@ -8,7 +9,7 @@ import java.util.Objects;
 
 /**
  * 【限流锁】
- * 1. Semaphore 实现流量限制
+ * 1. ConcurrencyLimiter 实现流量限制
  * 2. 借助唯一的 blogId 作为锁标志，并以 blogId-lockObject 作为 key-value 存储在 HashMap 中
  * 3. 使用 lockObject.wait(timeout) - lockObject.notifyAll() 实现线程的阻塞和唤醒
  * <p>
@@ -34,6 +35,12 @@ public class LimitFlowLock2Wait extends AbstractLimitFlowLock {
 
 
     public LimitFlowLock2Wait() {
+        super("wait");
+        this.allowRequestSet = new HashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
+    }
+
+    public LimitFlowLock2Wait(String name, ConcurrencyLimiter limiter) {
+        super(name, limiter);
         this.allowRequestSet = new HashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
     }
 
@@ -78,16 +85,25 @@ public class LimitFlowLock2Wait extends AbstractLimitFlowLock {
      */
     @Override
     void blockWaitCache(Long blogId) {
+        // 注意：wait(0) 表示永久等待，请求已超时则不再阻塞
+        long timeout = RequestDeadline.remainingMillis(ConcurrentConstant.WAIT_TIMEOUT_MILLS);
+        if (timeout <= 0) {
+            return;
+        }
         Thread lockObject;
         if (!Objects.isNull(lockObject = allowRequestSet.get(blogId))) {
             synchronized (lockObject) {
                 if (!Objects.isNull(lockObject = allowRequestSet.get(blogId))) {
                     try {
-                        lockObject.wait(ConcurrentConstant.WAIT_TIMEOUT_MILLS);
+                        lockObject.wait(timeout);
+                        if (allowRequestSet.get(blogId) == lockObject) {
+                            // 苏醒之后，锁仍未释放：超时自动苏醒
+                            metrics().timedOut();
+                        }
                     } catch (InterruptedException e) {
                         // todo 阻塞的线程被中断 --- 重置中断标志？？要不要重置？
                         // Thread.interrupted();
-                        log.info("【阻塞】等待缓存刷新的线程 {} 被中断", Thread.currentThread());
+                        log.error("【阻塞】等待缓存刷新的线程 {} 被中断", Thread.currentThread());
                     }
                 }
             }
@@ -0,0 +1,135 @@
+package com.study.blog.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 【限流锁监控】
+ * 每个限流锁以 name 作为 tag，注册以下指标（通过 /actuator/prometheus 暴露）：
+ * 1. limit.flow.lock.acquisitions：加锁成功（负责访问数据库）的次数
+ * 2. limit.flow.lock.coalesced：被合并（阻塞等待其他线程刷新缓存）的次数
+ * 3. limit.flow.lock.spin.successes：自旋期间缓存已刷新，不必阻塞的次数
+ * 4. limit.flow.lock.timeouts：阻塞等待超时的次数
+ * 5. limit.flow.lock.rejections：获取许可证被拒绝（流量达到限制）的次数
+ * 6. limit.flow.lock.wait：阻塞等待的耗时
+ * 7. limit.flow.lock.fill：持有许可证访问数据库的耗时
+ * 8. limit.flow.limiter.limit / limit.flow.limiter.in.flight：当前的并发限制 / 正在访问数据库的线程数
+ * <p>
+ * Gauge 按 名称 + tag 注册，同名的第二个 Gauge 只会返回第一个：名称重复时 tag 改为 name-2、name-3 ...，各自独立
+ *
+ * @author 10652
+ */
+public class LimitFlowLockMetrics {
+    private static final String TAG = "lock";
+    /**
+     * 每个 MeterRegistry 中已使用的名称 -> 使用次数
+     */
+    private static final ConcurrentMap<MeterRegistry, ConcurrentMap<String, AtomicInteger>> NAMES =
+            new ConcurrentHashMap<>(2);
+
+    private final Counter acquisitions;
+    private final Counter coalesced;
+    private final Counter spinSuccesses;
+    private final Counter timeouts;
+    private final Counter rejections;
+    private final Timer waitTimer;
+    private final Timer fillTimer;
+
+    /**
+     * 注册到全局 MeterRegistry：Spring Boot Actuator 会将自身的 MeterRegistry 加入全局 MeterRegistry
+     *
+     * @param name    限流锁名称
+     * @param limiter 流量限制器
+     */
+    LimitFlowLockMetrics(String name, ConcurrencyLimiter limiter) {
+        this(name, limiter, Metrics.globalRegistry);
+    }
+
+    LimitFlowLockMetrics(String name, ConcurrencyLimiter limiter, MeterRegistry registry) {
+        String tag = uniqueName(name, registry);
+        this.acquisitions = Counter.builder("limit.flow.lock.acquisitions").tag(TAG, tag)
+                .description("加锁成功，负责访问数据库的次数").register(registry);
+        this.coalesced = Counter.builder("limit.flow.lock.coalesced").tag(TAG, tag)
+                .description("阻塞等待其他线程刷新缓存的次数").register(registry);
+        this.spinSuccesses = Counter.builder("limit.flow.lock.spin.successes").tag(TAG, tag)
+                .description("自旋期间缓存已刷新的次数").register(registry);
+        this.timeouts = Counter.builder("limit.flow.lock.timeouts").tag(TAG, tag)
+                .description("阻塞等待超时的次数").register(registry);
+        this.rejections = Counter.builder("limit.flow.lock.rejections").tag(TAG, tag)
+                .description("获取许可证被拒绝的次数").register(registry);
+        this.waitTimer = Timer.builder("limit.flow.lock.wait").tag(TAG, tag)
+                .description("阻塞等待的耗时").publishPercentileHistogram().register(registry);
+        this.fillTimer = Timer.builder("limit.flow.lock.fill").tag(TAG, tag)
+                .description("持有许可证访问数据库的耗时").publishPercentileHistogram().register(registry);
+        bindGauges(tag, limiter, registry);
+    }
+
+    /**
+     * 只注册流量限制器的指标：limit.flow.limiter.limit / in.flight / rejected
+     *
+     * @param name    名称
+     * @param limiter 流量限制器
+     */
+    static void bindLimiter(String name, ConcurrencyLimiter limiter) {
+        bindLimiter(name, limiter, Metrics.globalRegistry);
+    }
+
+    private static void bindLimiter(String name, ConcurrencyLimiter limiter, MeterRegistry registry) {
+        bindGauges(uniqueName(name, registry), limiter, registry);
+    }
+
+    /**
+     * 名称重复时加上序号：name、name-2、name-3 ...
+     */
+    static String uniqueName(String name, MeterRegistry registry) {
+        int count = NAMES.computeIfAbsent(registry, key -> new ConcurrentHashMap<>(8))
+                .computeIfAbsent(name, key -> new AtomicInteger(0)).incrementAndGet();
+        return count == 1 ? name : name + "-" + count;
+    }
+
+    private static void bindGauges(String name, ConcurrencyLimiter limiter, MeterRegistry registry) {
+        Gauge.builder("limit.flow.limiter.limit", limiter, ConcurrencyLimiter::getLimit).tag(TAG, name)
+                .description("当前的并发限制").register(registry);
+        Gauge.builder("limit.flow.limiter.in.flight", limiter, ConcurrencyLimiter::getInFlight).tag(TAG, name)
+                .description("正在访问数据库的线程数").register(registry);
+        FunctionCounter.builder("limit.flow.limiter.rejected", limiter, ConcurrencyLimiter::getRejected).tag(TAG, name)
+                .description("流量限制器累计拒绝的次数").register(registry);
+    }
+
+    void acquired() {
+        acquisitions.increment();
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void spinSucceeded() {
+        spinSuccesses.increment();
+    }
+
+    void timedOut() {
+        timeouts.increment();
+    }
+
+    void rejected() {
+        rejections.increment();
+    }
+
+    void recordWait(long startNanos) {
+        waitTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordFill(long nanos) {
+        fillTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,68 @@
+package com.study.blog.lock;
+
+import com.study.blog.constant.ConcurrentConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 【限流锁注册中心】
+ * 所有服务共享的限流锁：
+ * 1. 全局预算：AimdConcurrencyLimiter，根据数据库耗时自适应调整，上限与 Druid maxActive 一致
+ * --> 一次页面访问（getBlogById + blogCacheEvaluation）无论经过几个限流锁，访问的都是同一个连接池，只受一个全局预算限制
+ * 2. 子预算：每个域（博客正文、指标量、用户）最多占用的并发数，防止某一个域的缓存击穿耗尽全局预算
+ * 3. 每个域一个 LimitFlowLock2Future，以域名作为监控 tag
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class LimitFlowLockRegistry {
+    private final ConcurrencyLimiter globalLimiter;
+    private final Map<LimitFlowDomain, LimitFlowLock2Future> locks;
+
+    @Autowired
+    public LimitFlowLockRegistry(@Value("${limit-flow.global.max:200}") int globalMax,
+                                 @Value("${limit-flow.domain.blog:120}") int blogBudget,
+                                 @Value("${limit-flow.domain.evaluation:60}") int evaluationBudget,
+                                 @Value("${limit-flow.domain.user:20}") int userBudget) {
+        this.globalLimiter = new AimdConcurrencyLimiter(ConcurrentConstant.LIMIT_INITIAL, ConcurrentConstant.LIMIT_MIN,
+                globalMax, ConcurrentConstant.LIMIT_LATENCY_TOLERANCE, ConcurrentConstant.LIMIT_BACKOFF_RATIO,
+                ConcurrentConstant.LIMIT_WINDOW);
+        LimitFlowLockMetrics.bindLimiter("global", globalLimiter);
+        this.locks = new EnumMap<>(LimitFlowDomain.class);
+        register(LimitFlowDomain.BLOG, blogBudget);
+        register(LimitFlowDomain.EVALUATION, evaluationBudget);
+        register(LimitFlowDomain.USER, userBudget);
+        log.info("【限流锁】全局预算:{}，博客:{}，指标量:{}，用户:{}", globalMax, blogBudget, evaluationBudget, userBudget);
+    }
+
+    /**
+     * 子预算：不排队，达到子预算时立即拒绝
+     */
+    private void register(LimitFlowDomain domain, int budget) {
+        ConcurrencyLimiter domainLimiter = new SemaphoreLimiter(budget, 0, 0, TimeUnit.MILLISECONDS);
+        String name = domain.name().toLowerCase();
+        locks.put(domain, new LimitFlowLock2Future(name, new BudgetedLimiter(domainLimiter, globalLimiter)));
+    }
+
+    /**
+     * @param domain 限流域
+     * @return 该域的限流锁
+     */
+    public LimitFlowLock2Future lock(LimitFlowDomain domain) {
+        return locks.get(domain);
+    }
+
+    /**
+     * @return 全局预算
+     */
+    public ConcurrencyLimiter getGlobalLimiter() {
+        return globalLimiter;
+    }
+}
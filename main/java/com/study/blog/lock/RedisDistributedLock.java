@@ -2,6 +2,7 @@ package com.study.blog.lock;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
@@ -13,12 +14,15 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * redis 分布式锁
+ * <p>
+ * 1. 加锁：SET key token NX PX lease（原子操作：加锁的同时设置租约）
+ * 2. 续约：lua/renew.lua，只有 token 匹配（仍持有锁）才能续约
+ * 3. 解锁：lua/unlock.lua，只有 token 匹配才能删除，防止误删其他线程（节点）持有的锁
  *
  * @author 10652
  */
 @Slf4j
 @Component
-@Deprecated
 public class RedisDistributedLock {
     /**
      * 过期时长（s）：30 s
@@ -28,6 +32,14 @@ public class RedisDistributedLock {
      * 成功解锁标识
      */
     private static final Long UNLOCK_SUCCESSFUL = 1L;
+    /**
+     * 解锁脚本：token 匹配才删除
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = loadScript("lua/unlock.lua");
+    /**
+     * 续约脚本：token 匹配才延长租约
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = loadScript("lua/renew.lua");
 
     private static RedisTemplate<String, Object> redisTemplateTemp;
     private final RedisTemplate<String, Object> redisTemplate;
@@ -45,6 +57,7 @@ public class RedisDistributedLock {
      * @param requestId requestId
      * @return true/false
      */
+    @Deprecated
     public static boolean lock(String blogId, String requestId) {
         /*
             设置 key-value-expire
@@ -67,6 +80,7 @@ public class RedisDistributedLock {
      * @param requestId requestId
      * @return true/false
      */
+    @Deprecated
     public static boolean unlock(String blogId, String requestId) {
         /*
             lua 脚本：Redis使用单个 Lua 解释器去运行所有脚本，并且Redis也保证脚本会以原子性的方式执行：当某个脚本正在运行的时候，不会有其他脚本或者Redis命令被执行
@@ -88,6 +102,56 @@ public class RedisDistributedLock {
         return Objects.equals(result, UNLOCK_SUCCESSFUL);
     }
 
+    /**
+     * 加锁：设置租约
+     *
+     * @param key         锁
+     * @param token       持有者标识（fencing token）
+     * @param leaseMillis 租约时长（ms）
+     * @return true：加锁成功 false：锁已被持有
+     */
+    public boolean tryLock(String key, long token, long leaseMillis) {
+        Boolean judge = redisTemplate.opsForValue().setIfAbsent(key, token, leaseMillis, TimeUnit.MILLISECONDS);
+        return !Objects.isNull(judge) && judge;
+    }
+
+    /**
+     * 续约：只有仍持有锁（token 匹配）时，才延长租约
+     *
+     * @param key         锁
+     * @param token       持有者标识
+     * @param leaseMillis 租约时长（ms）
+     * @return true：续约成功 false：锁已丢失
+     */
+    public boolean renew(String key, long token, long leaseMillis) {
+        Long result = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key), token, leaseMillis);
+        return Objects.equals(result, UNLOCK_SUCCESSFUL);
+    }
+
+    /**
+     * 解锁：只有仍持有锁（token 匹配）时，才删除锁
+     *
+     * @param key   锁
+     * @param token 持有者标识
+     * @return true：解锁成功 false：锁已丢失（租约过期 / 被其他持有者获取）
+     */
+    public boolean release(String key, long token) {
+        Long result = null;
+        try {
+            result = redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+        } catch (Exception e) {
+            log.error("【解锁】失败：{}:{}", key, e.getMessage());
+        }
+        return Objects.equals(result, UNLOCK_SUCCESSFUL);
+    }
+
+    private static DefaultRedisScript<Long> loadScript(String location) {
+        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+        redisScript.setLocation(new ClassPathResource(location));
+        redisScript.setResultType(Long.class);
+        return redisScript;
+    }
+
     @PostConstruct
     void init() {
         redisTemplateTemp = redisTemplate;
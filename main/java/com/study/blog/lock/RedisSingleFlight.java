@@ -0,0 +1,256 @@
+package com.study.blog.lock;
+
+import com.study.blog.constant.CacheConstant;
+import com.study.blog.constant.ConcurrentConstant;
+import com.study.blog.exception.LimitFlowException;
+import com.study.blog.util.RequestDeadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 【集群单飞】
+ * LimitFlowLock2Future 只能合并同一个 JVM 内的请求，N 个节点仍会产生 N 次数据库查询；
+ * 本组件借助 RedisDistributedLock，保证整个集群中只有一个节点访问数据库，刷新缓存
+ * <p>
+ * 如果节点获取到分布式锁，则它将持有锁，主要负责如下工作：
+ * （1）负责再次确认缓存，缓存仍不存在时访问数据库，刷新缓存
+ * （2）负责定时续约（每 1/3 租约），防止刷新缓存耗时超过租约，锁被其他节点获取
+ * （3）负责解锁，并通过 pub/sub 通知其他节点：缓存已刷新
+ * <p>
+ * 如果节点没有获取到分布式锁，则它将被阻塞，主要执行如下行为：
+ * （1）注册解锁通知，阻塞等待（最多 min(SINGLE_FLIGHT_WAIT_MILLS, 请求剩余的时间预算)，超时抛出 LimitFlowException）
+ * （2）被唤醒之后，查询缓存：缓存已存在则返回，否则重新尝试加锁
+ * <p>
+ * fencing token：每次加锁都从 Redis 计数器中取得一个递增的 token，写缓存时通过 fencedSet 比较 token，
+ * 租约过期后仍在执行的旧持有者（token 更小），无法覆盖新持有者写入的缓存；
+ * token 计数器与已写入的最大 token 总是一起续期，计数器不会先过期后从 1 重新开始
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class RedisSingleFlight implements MessageListener {
+    /**
+     * 获取 fencing token
+     */
+    private static final DefaultRedisScript<Long> FENCE_TOKEN_SCRIPT = loadScript("lua/fencetoken.lua");
+    /**
+     * 比较 fencing token 后写入缓存
+     */
+    private static final DefaultRedisScript<Long> FENCED_SET_SCRIPT = loadScript("lua/fencedset.lua");
+    /**
+     * 写入成功标识
+     */
+    private static final Long SET_SUCCESSFUL = 1L;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisDistributedLock distributedLock;
+    private final RedisMessageListenerContainer listenerContainer;
+    /**
+     * 保存 key-releaseSignal 键值对：阻塞的线程等待 releaseSignal，收到解锁通知时 complete
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> releaseSignals;
+    /**
+     * 续约线程
+     */
+    private final ScheduledExecutorService renewExecutor;
+
+    @Autowired
+    public RedisSingleFlight(RedisTemplate<String, Object> redisTemplate, RedisDistributedLock distributedLock,
+                             RedisMessageListenerContainer listenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.distributedLock = distributedLock;
+        this.listenerContainer = listenerContainer;
+        this.releaseSignals = new ConcurrentHashMap<>(ConcurrentConstant.ALLOW_PERMISSION >> 1);
+        this.renewExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "single-flight-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 集群单飞加载
+     *
+     * @param key         缓存 key：同时作为分布式锁、fencing token、解锁通知的标识
+     * @param cacheReader 查询缓存：返回 null 表示缓存不存在
+     * @param loader      访问数据库，刷新缓存（写缓存时应使用 fencedSet）
+     * @param <T>         结果类型
+     * @return 缓存 或 数据库中的结果
+     */
+    public <T> T load(String key, Supplier<T> cacheReader, FencedLoader<T> loader) {
+        String lockKey = CacheConstant.SINGLE_FLIGHT_LOCK + ":" + key;
+        long deadline = System.currentTimeMillis() + RequestDeadline.remainingMillis(
+                ConcurrentConstant.SINGLE_FLIGHT_WAIT_MILLS);
+        while (true) {
+            long token = nextFencingToken(key);
+            if (distributedLock.tryLock(lockKey, token, ConcurrentConstant.SINGLE_FLIGHT_LEASE_MILLS)) {
+                return loadAsHolder(key, lockKey, token, cacheReader, loader);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.info("【集群单飞】等待缓存刷新超时：{}", key);
+                throw new LimitFlowException(key + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+            }
+            awaitRelease(key, lockKey, remaining);
+            T value = cacheReader.get();
+            if (!Objects.isNull(value)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 比较 fencing token 后写入缓存：token 小于已写入的最大 token 时，放弃写入
+     *
+     * @param key     缓存 key
+     * @param value   缓存值
+     * @param token   fencing token
+     * @param timeout 过期时长
+     * @param unit    时间单位
+     * @return true：写入成功 false：token 已过期，放弃写入
+     */
+    public boolean fencedSet(String key, Object value, long token, long timeout, TimeUnit unit) {
+        Long result = redisTemplate.execute(FENCED_SET_SCRIPT, Arrays.asList(key, fenceKey(key), tokenKey(key)),
+                value, token, unit.toMillis(timeout), ConcurrentConstant.SINGLE_FLIGHT_TOKEN_MILLS);
+        if (!Objects.equals(result, SET_SUCCESSFUL)) {
+            log.error("【集群单飞】fencing token 已过期，放弃写入：{}，token:{}", key, token);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 收到解锁通知：唤醒等待该 key 的所有线程
+     *
+     * @param message 消息体为 key
+     * @param pattern pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object key = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (Objects.isNull(key)) {
+            return;
+        }
+        CompletableFuture<Void> signal = releaseSignals.remove(key.toString());
+        if (!Objects.isNull(signal)) {
+            signal.complete(null);
+        }
+    }
+
+    /**
+     * 持有锁：再次确认缓存 -> 访问数据库，刷新缓存 -> 解锁，通知其他节点
+     */
+    private <T> T loadAsHolder(String key, String lockKey, long token, Supplier<T> cacheReader,
+                               FencedLoader<T> loader) {
+        long period = ConcurrentConstant.SINGLE_FLIGHT_LEASE_MILLS / 3;
+        ScheduledFuture<?> renewal = renewExecutor.scheduleAtFixedRate(() -> renewLease(lockKey, token), period,
+                period, TimeUnit.MILLISECONDS);
+        try {
+            T value = cacheReader.get();
+            return Objects.isNull(value) ? loader.load(token) : value;
+        } finally {
+            renewal.cancel(false);
+            distributedLock.release(lockKey, token);
+            redisTemplate.convertAndSend(CacheConstant.SINGLE_FLIGHT_CHANNEL, key);
+        }
+    }
+
+    /**
+     * 阻塞等待解锁通知
+     * <p>
+     * 先注册 releaseSignal，再确认锁是否仍被持有：防止解锁通知在注册之前到达，导致无人唤醒
+     */
+    private void awaitRelease(String key, String lockKey, long timeoutMillis) {
+        CompletableFuture<Void> signal = releaseSignals.computeIfAbsent(key, k -> new CompletableFuture<>());
+        Boolean locked = redisTemplate.hasKey(lockKey);
+        if (Objects.isNull(locked) || !locked) {
+            return;
+        }
+        try {
+            signal.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LimitFlowException(key + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+        } catch (ExecutionException | TimeoutException e) {
+            log.info("【集群单飞】等待解锁通知超时：{}", key);
+        }
+    }
+
+    /**
+     * 续约：锁已丢失时，只记录日志（旧持有者的写入会被 fencing token 拒绝）
+     */
+    private void renewLease(String lockKey, long token) {
+        try {
+            if (!distributedLock.renew(lockKey, token, ConcurrentConstant.SINGLE_FLIGHT_LEASE_MILLS)) {
+                log.error("【集群单飞】续约失败，锁已丢失：{}，token:{}", lockKey, token);
+            }
+        } catch (Exception e) {
+            log.error("【集群单飞】续约异常：{}", e.getMessage());
+        }
+    }
+
+    private long nextFencingToken(String key) {
+        Long token = redisTemplate.execute(FENCE_TOKEN_SCRIPT, Arrays.asList(tokenKey(key), fenceKey(key)),
+                ConcurrentConstant.SINGLE_FLIGHT_TOKEN_MILLS);
+        return Objects.isNull(token) ? 0L : token;
+    }
+
+    private static String tokenKey(String key) {
+        return CacheConstant.SINGLE_FLIGHT_TOKEN + ":" + key;
+    }
+
+    private static String fenceKey(String key) {
+        return CacheConstant.SINGLE_FLIGHT_FENCE + ":" + key;
+    }
+
+    private static DefaultRedisScript<Long> loadScript(String location) {
+        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+        redisScript.setLocation(new ClassPathResource(location));
+        redisScript.setResultType(Long.class);
+        return redisScript;
+    }
+
+    @PostConstruct
+    void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.SINGLE_FLIGHT_CHANNEL));
+    }
+
+    @PreDestroy
+    void destroy() {
+        renewExecutor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface FencedLoader<T> {
+        /**
+         * 访问数据库，刷新缓存
+         *
+         * @param fencingToken 本次加锁的 fencing token：写缓存时使用
+         * @return 结果
+         */
+        T load(long fencingToken);
+    }
+}
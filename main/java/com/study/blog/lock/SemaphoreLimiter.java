@@ -0,0 +1,65 @@
+package com.study.blog.lock;
+
+import com.study.blog.util.RequestDeadline;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 【固定并发限制器】
+ * Semaphore 实现：许可证数量固定，阻塞等待的线程数 达到 queueLimit 时拒绝，否则最多等待 min(timeout, 请求剩余的时间预算)
+ *
+ * @author 10652
+ */
+public class SemaphoreLimiter implements ConcurrencyLimiter {
+    private final Semaphore allowRequest;
+    private final int permits;
+    private final int queueLimit;
+    private final long timeout;
+    private final TimeUnit unit;
+    private final AtomicLong rejected;
+
+    public SemaphoreLimiter(int permits, int queueLimit, long timeout, TimeUnit unit) {
+        this.allowRequest = new Semaphore(permits);
+        this.permits = permits;
+        this.queueLimit = queueLimit;
+        this.timeout = timeout;
+        this.unit = unit;
+        this.rejected = new AtomicLong(0);
+    }
+
+    @Override
+    public boolean tryAcquire() throws InterruptedException {
+        if (allowRequest.getQueueLength() <= queueLimit && allowRequest.tryAcquire(RequestDeadline.remainingNanos(unit.toNanos(timeout)), TimeUnit.NANOSECONDS)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public void onSuccess(long latencyNanos) {
+        allowRequest.release();
+    }
+
+    @Override
+    public void onDropped() {
+        allowRequest.release();
+    }
+
+    @Override
+    public int getLimit() {
+        return permits;
+    }
+
+    @Override
+    public int getInFlight() {
+        return permits - allowRequest.availablePermits();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+}
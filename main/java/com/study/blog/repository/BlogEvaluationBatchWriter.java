@@ -0,0 +1,198 @@
+package com.study.blog.repository;
+
+import com.study.blog.dto.BlogEvaluationCacheDTO;
+import com.study.blog.entity.Comment;
+import com.study.blog.entity.Vote;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 【指标量批量写入】
+ * 将 阅读量、评论量、点赞量 分块写入数据库：
+ * （1）每块 chunkSize 条，通过 JDBC batch（ExecutorType.BATCH）执行逐行的 UPDATE ... WHERE blog_id = ?
+ * （2）每块一个短事务：行锁只持有一块的时间，失败只回滚该块
+ * （3）最多 parallelism 块并行写入
+ * <p>
+ * 失败的块不抛出异常，而是返回给调用方：由调用方将其增量加回 Redis，下次刷新重试
+ * <p>
+ * 点赞记录（vote 表）、评论（comment 表）同样分块、每块一个短事务写入：persistVotes / persistComments
+ *
+ * @author 10652
+ */
+@Slf4j
+@Repository
+public class BlogEvaluationBatchWriter {
+    private final SqlSessionTemplate batchSqlSession;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService writeExecutor;
+    private final int chunkSize;
+
+    @Autowired
+    public BlogEvaluationBatchWriter(SqlSessionFactory sqlSessionFactory,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${blog.evaluation.flush.chunk-size:500}") int chunkSize,
+                                     @Value("${blog.evaluation.flush.parallelism:2}") int parallelism) {
+        this.batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.writeExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "evaluation-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 分块累加增量：read_count = read_count + ?
+     *
+     * @param deltas 上次写入之后的增量
+     * @return 写入失败的增量
+     */
+    public List<BlogEvaluationCacheDTO> increment(List<BlogEvaluationCacheDTO> deltas) {
+        return write(deltas, BlogEvaluationRepository::incrementBlogEvaluation);
+    }
+
+    /**
+     * 分块覆盖：read_count = ?
+     *
+     * @param evaluations 指标量（为 null 的指标量保持数据库中的值不变）
+     * @return 写入失败的指标量
+     */
+    public List<BlogEvaluationCacheDTO> overwrite(List<BlogEvaluationCacheDTO> evaluations) {
+        return write(evaluations, BlogEvaluationRepository::updateBlogEvaluation);
+    }
+
+    /**
+     * 分块写入点赞状态：先删除该用户在博客上的点赞，已点赞（id 不为 null）时再 INSERT
+     * 重复写入同一状态是幂等的；id 已被其他点赞占用时主键冲突，作为写入失败返回（不忽略）
+     *
+     * @param votes 点赞状态
+     * @return 写入失败的点赞状态
+     */
+    public List<Vote> persistVotes(List<Vote> votes) {
+        return persist(votes, (repository, vote) -> {
+            repository.deleteUserVote(vote);
+            if (!Objects.isNull(vote.getId())) {
+                repository.insertVoteWithId(vote);
+            }
+        }, "点赞");
+    }
+
+    /**
+     * 分块写入评论：存在（content 不为 null）时删除同一条评论后 INSERT，已删除（content 为 null）时删除
+     * 重复写入是幂等的；id 已被其他评论占用时主键冲突，作为写入失败返回（不忽略）
+     *
+     * @param comments 评论状态
+     * @return 写入失败的评论状态
+     */
+    public List<Comment> persistComments(List<Comment> comments) {
+        return persist(comments, (repository, comment) -> {
+            if (Objects.isNull(comment.getContent())) {
+                repository.deleteCommentByCommentId(comment.getId());
+            } else {
+                repository.deleteOwnComment(comment);
+                repository.insertCommentWithId(comment);
+            }
+        }, "评论");
+    }
+
+    /**
+     * 按当前状态分块写入：每块一个 BATCH 事务，按顺序执行（同一条记录的状态只出现一次，顺序无关）
+     * 一块失败时逐条重试，只有真正失败（如主键冲突）的记录返回给调用方，不拖累同一块中的其他记录
+     */
+    private <T> List<T> persist(List<T> states, BiConsumer<BlogEvaluationRepository, T> statement, String name) {
+        if (states.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<T> failed = new ArrayList<>();
+        for (int from = 0; from < states.size(); from += chunkSize) {
+            List<T> chunk = states.subList(from, Math.min(from + chunkSize, states.size()));
+            try {
+                persistChunk(chunk, statement);
+            } catch (Exception e) {
+                log.error("【{}写入】{} 条写入失败，逐条重试：{}", name, chunk.size(), e.getMessage());
+                for (T state : chunk) {
+                    try {
+                        persistChunk(Collections.singletonList(state), statement);
+                    } catch (Exception stateException) {
+                        log.error("【{}写入】写入失败：{}，{}", name, state, stateException.getMessage());
+                        failed.add(state);
+                    }
+                }
+            }
+        }
+        log.info("【{}写入】{} 条，失败 {} 条", name, states.size(), failed.size());
+        return failed;
+    }
+
+    private <T> void persistChunk(List<T> chunk, BiConsumer<BlogEvaluationRepository, T> statement) {
+        transactionTemplate.execute(status -> {
+            BlogEvaluationRepository repository = batchSqlSession.getMapper(BlogEvaluationRepository.class);
+            chunk.forEach(state -> statement.accept(repository, state));
+            batchSqlSession.flushStatements();
+            return null;
+        });
+    }
+
+    /**
+     * 分块写入：阻塞直到所有块写入完成
+     */
+    private List<BlogEvaluationCacheDTO> write(List<BlogEvaluationCacheDTO> evaluations,
+                                               BiConsumer<BlogEvaluationRepository, BlogEvaluationCacheDTO> statement) {
+        if (evaluations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CompletableFuture<List<BlogEvaluationCacheDTO>>> chunks = new ArrayList<>(
+                evaluations.size() / chunkSize + 1);
+        for (int from = 0; from < evaluations.size(); from += chunkSize) {
+            List<BlogEvaluationCacheDTO> chunk = evaluations.subList(from, Math.min(from + chunkSize,
+                    evaluations.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> writeChunk(chunk, statement), writeExecutor));
+        }
+        List<BlogEvaluationCacheDTO> failed = new ArrayList<>();
+        chunks.forEach(chunk -> failed.addAll(chunk.join()));
+        log.info("【指标量写入】{} 个博客，{} 块，失败 {} 个", evaluations.size(), chunks.size(), failed.size());
+        return failed;
+    }
+
+    private List<BlogEvaluationCacheDTO> writeChunk(List<BlogEvaluationCacheDTO> chunk,
+                                                    BiConsumer<BlogEvaluationRepository, BlogEvaluationCacheDTO>
+                                                            statement) {
+        try {
+            transactionTemplate.execute(status -> {
+                BlogEvaluationRepository repository = batchSqlSession.getMapper(BlogEvaluationRepository.class);
+                chunk.forEach(evaluation -> statement.accept(repository, evaluation));
+                batchSqlSession.flushStatements();
+                return null;
+            });
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.error("【指标量写入】{} 个博客写入失败：{}", chunk.size(), e.getMessage());
+            return chunk;
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        writeExecutor.shutdown();
+    }
+}
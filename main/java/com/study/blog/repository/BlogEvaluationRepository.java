@@ -8,7 +8,6 @@ import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author 10652
@@ -55,17 +54,20 @@ public interface BlogEvaluationRepository {
     void saveBlogEvaluationByBlogId(@Param("evaluationList") List<BlogEvaluationCacheDTO> evaluationCaches);
 
     /**
-     * 批量保存 blog evaluation
+     * 更新单个博客的 阅读量、评论量、点赞量：为 null 的指标量保持不变
+     * 由 BlogEvaluationBatchWriter 以 ExecutorType.BATCH 批量执行
      *
-     * @param readingCountMap 阅读量信息
-     * @param commentMap      评论量信息
-     * @param voteMap         点赞量信息
+     * @param evaluation blogId + 指标量
      */
-    void saveBlogEvaluation(
-            @Param("readCountMap") Map<Long, Long> readingCountMap,
-            @Param("commentMap") Map<Long, Long> commentMap,
-            @Param("voteMap") Map<Long, Long> voteMap
-    );
+    void updateBlogEvaluation(BlogEvaluationCacheDTO evaluation);
+
+    /**
+     * 累加单个博客的 阅读量、评论量、点赞量的增量：read_count = read_count + ?
+     * 由 BlogEvaluationBatchWriter 以 ExecutorType.BATCH 批量执行
+     *
+     * @param delta blogId + 增量
+     */
+    void incrementBlogEvaluation(BlogEvaluationCacheDTO delta);
 
     /**
      * 批量保存 评论列表
@@ -95,6 +97,34 @@ public interface BlogEvaluationRepository {
      */
     void insertComment(@Param("comment") Comment comment);
 
+    /**
+     * 写入 Redis 中的点赞：id 由 IDService 分配，id 已存在时主键冲突（不忽略）
+     *
+     * @param vote vote
+     */
+    void insertVoteWithId(Vote vote);
+
+    /**
+     * 删除用户在博客上的所有点赞
+     *
+     * @param vote blogId + userId
+     */
+    void deleteUserVote(Vote vote);
+
+    /**
+     * 写入 Redis 中的评论：id 由 IDService 分配，id 已存在时主键冲突（不忽略）
+     *
+     * @param comment comment
+     */
+    void insertCommentWithId(Comment comment);
+
+    /**
+     * 删除同一条评论（id、blogId、userId 都相同）：id 被其他评论占用时不删除
+     *
+     * @param comment id + blogId + userId
+     */
+    void deleteOwnComment(Comment comment);
+
     /**
      * 删除 vote
      *
@@ -5,6 +5,7 @@ import com.study.blog.entity.Blog;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -101,4 +102,21 @@ public interface BlogRepository {
      * @return 博客列表
      */
     List<Blog> listAllBlog();
+
+    /**
+     * 按 blog_id 顺序获取 afterBlogId 之后的一页博客：重建 ES 索引时使用，不包含 html_content
+     *
+     * @param afterBlogId 上一页最后一篇博客的 id
+     * @param limit       每页数量
+     * @return 博客列表
+     */
+    List<Blog> listBlogAfter(@Param("afterBlogId") Long afterBlogId, @Param("limit") int limit);
+
+    /**
+     * 批量获取博客：同步到 ES 时使用，不包含 html_content
+     *
+     * @param ids blogId 集合
+     * @return 存在的博客
+     */
+    List<Blog> listBlogByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,49 @@
+package com.study.blog.repository;
+
+import com.study.blog.entity.EsOutbox;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * @author 10652
+ */
+@Repository
+public interface EsOutboxRepository {
+    /**
+     * 记录博客发生变化：应与博客的修改处于同一个事务中
+     *
+     * @param blogId blogId
+     */
+    void saveOutbox(@Param("blogId") Long blogId);
+
+    /**
+     * 按 id 顺序获取待同步的记录：死信不再获取
+     *
+     * @param limit 数量
+     * @return 待同步的记录
+     */
+    List<EsOutbox> listPending(@Param("limit") int limit);
+
+    /**
+     * 删除已同步的记录
+     *
+     * @param ids id 列表
+     */
+    void deleteByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 同步失败：失败次数 +1
+     *
+     * @param ids id 列表
+     */
+    void increaseAttempts(@Param("ids") List<Long> ids);
+
+    /**
+     * 失败次数达到上限：转为死信，不再同步（保留记录，人工处理）
+     *
+     * @param ids id 列表
+     */
+    void markDead(@Param("ids") List<Long> ids);
+}
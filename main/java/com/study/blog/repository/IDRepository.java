@@ -7,5 +7,26 @@ import org.apache.ibatis.annotations.Param;
  * @author 10652
  */
 public interface IDRepository {
+    /**
+     * 博客作者 与 评论者：评论尚未写入数据库时，commentUserId 为 null
+     *
+     * @param blogId    blogId
+     * @param commentId commentId
+     * @return 博客作者 id + 评论者 id，博客不存在时为 null
+     */
     ID getUserId(@Param("blogId") Long blogId, @Param("commentId") Long commentId);
+
+    /**
+     * 数据库中最大的 voteId
+     *
+     * @return 最大的 voteId，没有点赞时为 0
+     */
+    Long findMaxVoteId();
+
+    /**
+     * 数据库中最大的 commentId
+     *
+     * @return 最大的 commentId，没有评论时为 0
+     */
+    Long findMaxCommentId();
 }
@@ -5,6 +5,7 @@ import com.study.blog.entity.User;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -51,6 +52,14 @@ public interface UserMapper {
      */
     User searchById(@Param("id") int id);
 
+    /**
+     * 根据id批量查询用户（只包含 id、username、avatar）
+     *
+     * @param ids id 集合
+     * @return 用户列表
+     */
+    List<User> findUsersByIds(@Param("ids") Collection<Integer> ids);
+
     /**
      * 根据id查询用户(联表查询)
      *
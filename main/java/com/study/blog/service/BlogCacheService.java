@@ -9,7 +9,8 @@ public interface BlogCacheService {
     /**
      * 获取博客缓存
      * @param blogId 博客 id
-     * @return Blog
+     * @return Blog：缓存不存在时返回 null
+     * @throws com.study.blog.exception.NullBlogException 空数据（数据库中也不存在该博客）
      */
     Blog getBlogFromCacheById(long blogId);
 
@@ -24,4 +25,11 @@ public interface BlogCacheService {
      * @param blog blog
      */
     void putBlogCache(Blog blog);
+
+    /**
+     * 添加 博客缓存：比较 fencing token，token 已过期（小于已写入的 token）时放弃写入
+     * @param blog blog
+     * @param fencingToken 集群单飞加锁时获取的 fencing token
+     */
+    void putBlogCache(Blog blog, long fencingToken);
 }
@@ -1,15 +1,22 @@
 package com.study.blog.service;
 
 import com.study.blog.dto.BlogEvaluationCacheDTO;
+import com.study.blog.dto.CommentPageDTO;
 import com.study.blog.entity.Comment;
 import com.study.blog.entity.Vote;
 
-import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * @author 10652
  */
 public interface BlogEvaluationCacheService {
+    /**
+     * 批量累加阅读量：指标量不存在且未能加载，增量未累加（由调用者保留，稍后重试）
+     */
+    Long READING_DEFERRED = -1L;
+
     /**
      * 根据 blogId 获取阅读量
      *
@@ -19,19 +26,21 @@ public interface BlogEvaluationCacheService {
     Integer getReadingCountByBlogId(Long blogId);
 
     /**
-     * 根据 blogId 获取 comment list
+     * 分页获取评论：按发表时间排序（keyset 分页）
      *
      * @param blogId blogId
-     * @return comment list
+     * @param cursor 上一页返回的游标：为 null 时从第一条评论开始
+     * @param limit  本页条数
+     * @return 一页评论 + 下一页的游标
      */
-    List<Comment> getBlogCommentListByBlogId(Long blogId);
+    CommentPageDTO getBlogCommentPage(Long blogId, String cursor, int limit);
 
     /**
-     * 根据 blogId 获取 vote list
+     * 判断用户是否已点赞：查询点赞者 hash（VOTER:{blogId}），O(1)
      *
      * @param blogId blogId
-     * @param userId
-     * @return vote list
+     * @param userId userId
+     * @return voteId：已点赞 0：未点赞
      */
     Long judgeVotedById(Long blogId, Integer userId);
 
@@ -52,16 +61,36 @@ public interface BlogEvaluationCacheService {
      */
     BlogEvaluationCacheDTO getBlogEvaluationFromMysql(Long blogId);
 
+    /**
+     * 从 数据库中获取 blog evaluation：系统正忙（限流拒绝 / 等待超时）时，返回 staleReader 提供的过期值
+     *
+     * @param blogId      blogId
+     * @param staleReader 过期值：返回 null 表示没有过期值
+     * @return blog evaluation
+     */
+    BlogEvaluationCacheDTO getBlogEvaluationFromMysql(Long blogId, Supplier<BlogEvaluationCacheDTO> staleReader);
+
     /**
      * 将 数据 更新入 数据库中 ： 定时更新入关系型数据库
      */
     void saveBlogEvaluation2Mysql();
 
     /**
-     * 从 redis 中获取 blog evaluation
+     * 将 点赞记录 写入数据库：点赞 / 取消点赞 只在 Redis 中完成，定时批量写入 vote 表
+     */
+    void saveVotes2Mysql();
+
+    /**
+     * 将 评论 写入数据库：新增 / 删除评论 只在 Redis 中完成，定时批量写入 comment 表
+     */
+    void saveComments2Mysql();
+
+    /**
+     * 从 redis 中获取 blog evaluation：阅读量、评论量、点赞量（一次往返，同时做空数据检测）
      *
      * @param blogId blogId
-     * @return blog evaluation blog evaluation
+     * @return blog evaluation blog evaluation，无缓存时返回 null
+     * @throws com.study.blog.exception.NullBlogException 空数据
      */
     BlogEvaluationCacheDTO getBlogEvaluationByBlogId2Redis(Long blogId);
 
@@ -77,13 +106,13 @@ public interface BlogEvaluationCacheService {
     /**
      * 新增 评论 =》评论量
      *
-     * @param comment comment
+     * @param comment comment（由 IDService 分配的 commentId 回填到 comment.id）
      * @return commentCount
      */
     Long addBlogComment(Comment comment);
 
     /**
-     * 删除 评论 =》评论量
+     * 删除 评论 =》评论量：评论不存在时不重复删除
      *
      * @param blogId    blogId
      * @param commentId commentId
@@ -93,9 +122,9 @@ public interface BlogEvaluationCacheService {
 
 
     /**
-     * 新增 点赞 =》点赞量
+     * 新增 点赞 =》点赞量：已点赞时不重复点赞
      *
-     * @param vote vote
+     * @param vote vote（由 Redis 分配的 voteId 回填到 vote.id）
      * @return 点赞量
      */
     Long voteBlog(Vote vote);
@@ -105,9 +134,10 @@ public interface BlogEvaluationCacheService {
      *
      * @param blogId blogId
      * @param voteId votedId
+     * @param userId 点赞者 id
      * @return 点赞量
      */
-    Long cancelVotedBlog(Long blogId, Long voteId);
+    Long cancelVotedBlog(Long blogId, Long voteId, Integer userId);
 
     /**
      * 访问 blog =》阅读量
@@ -117,6 +147,14 @@ public interface BlogEvaluationCacheService {
      */
     Long incrementBlogReading(Long blogId);
 
+    /**
+     * 批量累加 阅读量：由 ReadingCountBuffer 定时调用
+     *
+     * @param readingDeltas blogId - 阅读量增量
+     * @return blogId - 累加后的阅读量（不包括空数据）；指标量不存在且未能加载时为 READING_DEFERRED，增量未累加
+     */
+    Map<Long, Long> incrementBlogReading(Map<Long, Long> readingDeltas);
+
     /**
      * 删除 缓存中的 blog evaluation记录
      *
@@ -1,20 +1,20 @@
 package com.study.blog.service;
 
-import com.study.blog.entity.Comment;
-
-import java.util.List;
+import com.study.blog.dto.CommentPageDTO;
 
 /**
  * @author 10652
  */
 public interface CommentService {
     /**
-     * 列出博客的所有评论
+     * 分页列出博客的评论：按发表时间排序
      *
      * @param blogId 博客id
-     * @return 评论列表
+     * @param cursor 上一页返回的游标：为 null 时从第一条评论开始
+     * @param limit  本页条数
+     * @return 一页评论 + 下一页的游标
      */
-    List<Comment> listComment(Long blogId);
+    CommentPageDTO listComment(Long blogId, String cursor, int limit);
 
     /**
      * 发布评论
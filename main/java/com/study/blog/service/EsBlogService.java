@@ -1,12 +1,15 @@
 package com.study.blog.service;
 
+import com.study.blog.dto.EsBlogCounter;
 import com.study.blog.entity.EsBlog;
 import com.study.blog.entity.User;
 import com.study.blog.vo.TagVO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author 10652
@@ -90,5 +93,27 @@ public interface EsBlogService {
      */
     List<User> listTop12User();
 
+    /**
+     * 批量局部更新 阅读量、评论量、点赞量：只更新指标量字段，不重建整个文档
+     *
+     * @param counters 指标量（为 null 的指标量不更新）
+     * @return 写入失败的指标量
+     */
+    List<EsBlogCounter> updateCounters(List<EsBlogCounter> counters);
+
+    /**
+     * 批量写入博客：ES 中已存在的博客只更新内容字段（不覆盖指标量），不存在的博客以 blogId 作为文档 id 新增
+     *
+     * @param esBlogs 博客
+     * @return 写入失败的 blogId
+     */
+    Set<Long> saveBlogs(List<EsBlog> esBlogs);
 
+    /**
+     * 批量删除博客：ES 中不存在的博客视为删除成功
+     *
+     * @param blogIds blogId
+     * @return 删除失败的 blogId
+     */
+    Set<Long> deleteBlogs(Collection<Long> blogIds);
 }
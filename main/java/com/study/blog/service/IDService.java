@@ -4,4 +4,12 @@ import com.study.blog.entity.ID;
 
 public interface IDService {
     ID getUserId(Long blogId, Long commentId);
+
+    /**
+     * 分配 id：不访问数据库，写入 Redis 之前即可得到 id
+     *
+     * @param sequence id 序列：CacheConstant.VOTE_ID / CacheConstant.COMMENT_ID
+     * @return 序列中唯一的 id（不保证连续、不保证跨节点递增）
+     */
+    Long nextId(String sequence);
 }
@@ -17,8 +17,9 @@ public interface VoteService {
      *
      * @param voteId 点赞id
      * @param blogId 博客id
+     * @param userId 点赞者id
      */
-    void deleteVote(Long voteId, Long blogId);
+    void deleteVote(Long voteId, Long blogId, Integer userId);
 
     /**
      * 获取点赞者的id
@@ -34,7 +35,7 @@ public interface VoteService {
      *
      * @param blogId 博客id
      * @param userId 用户id
-     * @return 0/1
+     * @return voteId：已点赞 0：未点赞
      */
     Long isVoted(Long blogId, Integer userId);
 }
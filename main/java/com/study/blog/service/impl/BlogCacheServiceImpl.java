@@ -1,29 +1,82 @@
 package com.study.blog.service.impl;
 
 import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.study.blog.constant.CacheConstant;
+import com.study.blog.constant.ValidateConstant;
 import com.study.blog.entity.Blog;
+import com.study.blog.exception.NullBlogException;
+import com.study.blog.lock.RedisSingleFlight;
 import com.study.blog.service.BlogCacheService;
 import com.study.blog.util.BlogCacheUtil;
+import com.study.blog.util.RedisScriptUtil;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * 博客缓存：本地缓存（Caffeine） + Redis 缓存
+ * 1. 查询：先查本地缓存（无网络 I/O，无 JSON 解析），不存在再查 Redis，并放入本地缓存
+ * --> 查询 Redis：lua/getandtouch.lua 一次往返完成 空数据检测 + 查询 + 续期（剩余过期时长仍充足时不续期）
+ * 2. 删除：删除 Redis 缓存 与 本地缓存，并通过 pub/sub 通知其他节点删除本地缓存
+ * 3. 本地缓存按博客内容大小加权淘汰，并设置较短的过期时长：即使失效通知丢失，不一致的时间也有上限
+ *
  * @author 10652
  */
 @Slf4j
 @Service
-public class BlogCacheServiceImpl implements BlogCacheService {
+public class BlogCacheServiceImpl implements BlogCacheService, MessageListener {
+    /**
+     * 空数据检测 + 查询 + 续期
+     */
+    private static final DefaultRedisScript<Object> GET_AND_TOUCH_SCRIPT = RedisScriptUtil.load(
+            "lua/getandtouch.lua", Object.class);
+    /**
+     * 剩余过期时长低于一半时才续期：热点博客每 3 小时才续期一次
+     */
+    private static final long BLOG_TOUCH_THRESHOLD_MILLS = TimeUnit.HOURS.toMillis(CacheConstant.BLOG_TIMEOUT) / 2;
+
     private RedisTemplate<String, Object> redisTemplate;
+    private RedisSingleFlight redisSingleFlight;
+    private RedisMessageListenerContainer listenerContainer;
+    private Cache<Long, Blog> localCache;
 
     @Autowired
-    public BlogCacheServiceImpl(RedisTemplate<String, Object> redisTemplate) {
+    public BlogCacheServiceImpl(RedisTemplate<String, Object> redisTemplate, RedisSingleFlight redisSingleFlight,
+                                RedisMessageListenerContainer listenerContainer,
+                                @Value("${blog.cache.local.max-weight:33554432}") long maxWeight,
+                                @Value("${blog.cache.local.expire-seconds:60}") long expireSeconds) {
         this.redisTemplate = redisTemplate;
+        this.redisSingleFlight = redisSingleFlight;
+        this.listenerContainer = listenerContainer;
+        // 权重：博客内容的字符数（md + html + 摘要），大博客占用更多的配额
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Long blogId, Blog blog) -> weigh(blog))
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(Metrics.globalRegistry, localCache, "blog.local");
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.BLOG_INVALIDATION_CHANNEL));
     }
 
     @Override
@@ -34,16 +87,40 @@ public class BlogCacheServiceImpl implements BlogCacheService {
         }
         String key = BlogCacheUtil.generateKey(CacheConstant.BLOG, blog.getBlogId());
         redisTemplate.opsForValue().set(key, blog, CacheConstant.BLOG_TIMEOUT, TimeUnit.HOURS);
+        localCache.put(blog.getBlogId(), blog.copy());
+    }
+
+    @Override
+    public void putBlogCache(Blog blog, long fencingToken) {
+        if (Objects.isNull(blog)) {
+            log.error("【缓存 Blog】：blog 为 null");
+            return;
+        }
+        String key = BlogCacheUtil.generateKey(CacheConstant.BLOG, blog.getBlogId());
+        if (redisSingleFlight.fencedSet(key, blog, fencingToken, CacheConstant.BLOG_TIMEOUT, TimeUnit.HOURS)) {
+            localCache.put(blog.getBlogId(), blog.copy());
+        }
     }
 
     @Override
     public Blog getBlogFromCacheById(long blogId) {
+        Blog local = localCache.getIfPresent(blogId);
+        if (!Objects.isNull(local)) {
+            return local.copy();
+        }
         String key = BlogCacheUtil.generateKey(CacheConstant.BLOG, blogId);
-        Object blogObj = redisTemplate.opsForValue().get(key);
+        Object blogObj = redisTemplate.execute(GET_AND_TOUCH_SCRIPT, Arrays.asList(
+                BlogCacheUtil.generateKey(CacheConstant.BLOG_ABSENT, blogId), key),
+                TimeUnit.SECONDS.toMillis(CacheConstant.EXPIRE), TimeUnit.HOURS.toMillis(CacheConstant.BLOG_TIMEOUT),
+                BLOG_TOUCH_THRESHOLD_MILLS);
         if (Objects.isNull(blogObj)) {
             // log.info("【查询 Blog 缓存】：博客 无缓存");
             return null;
         }
+        if (blogObj instanceof Number) {
+            // 说明 该blog 不存在！
+            throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
+        }
         Blog blog;
         try {
             blog = JSONObject.parseObject(blogObj.toString(), Blog.class);
@@ -51,8 +128,7 @@ public class BlogCacheServiceImpl implements BlogCacheService {
             log.error("【查询 Blog 缓存】：格式转换失败");
             return null;
         }
-        // 更新过期时长
-        redisTemplate.expire(key, CacheConstant.BLOG_TIMEOUT, TimeUnit.HOURS);
+        localCache.put(blogId, blog.copy());
         return blog;
     }
 
@@ -60,5 +136,37 @@ public class BlogCacheServiceImpl implements BlogCacheService {
     public void removeBlogFromCacheById(long blogId) {
         String key = BlogCacheUtil.generateKey(CacheConstant.BLOG, blogId);
         redisTemplate.delete(key);
+        localCache.invalidate(blogId);
+        // 通知其他节点删除本地缓存
+        redisTemplate.convertAndSend(CacheConstant.BLOG_INVALIDATION_CHANNEL, blogId);
+    }
+
+    /**
+     * 收到失效通知：删除本地缓存
+     *
+     * @param message 消息体为 blogId
+     * @param pattern pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object blogId = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (Objects.isNull(blogId)) {
+            return;
+        }
+        try {
+            localCache.invalidate(Long.valueOf(blogId.toString()));
+        } catch (NumberFormatException e) {
+            log.error("【本地缓存】失效通知格式错误：{}", blogId);
+        }
+    }
+
+    private static int weigh(Blog blog) {
+        long weight = length(blog.getContent()) + length(blog.getHtmlContent()) + length(blog.getSummary())
+                + length(blog.getTitle());
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, weight));
+    }
+
+    private static long length(String value) {
+        return Objects.isNull(value) ? 0 : value.length();
     }
 }
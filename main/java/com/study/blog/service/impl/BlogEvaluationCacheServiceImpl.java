@@ -6,27 +6,44 @@ import com.study.blog.constant.ConcurrentConstant;
 import com.study.blog.constant.ValidateConstant;
 import com.study.blog.dto.BlogEvaluationCacheDTO;
 import com.study.blog.dto.BlogInfo;
+import com.study.blog.dto.CommentPageDTO;
 import com.study.blog.entity.Comment;
 import com.study.blog.entity.Vote;
 import com.study.blog.exception.LimitFlowException;
 import com.study.blog.exception.NullBlogException;
-import com.study.blog.lock.LimitFlowLock2Park;
-import com.study.blog.lock.LimitFlowLock2Wait;
+import com.study.blog.lock.LimitFlowDomain;
+import com.study.blog.lock.LimitFlowLock2Future;
+import com.study.blog.lock.LimitFlowLockRegistry;
+import com.study.blog.repository.BlogEvaluationBatchWriter;
 import com.study.blog.repository.BlogEvaluationRepository;
 import com.study.blog.service.BlogEvaluationCacheService;
+import com.study.blog.service.IDService;
 import com.study.blog.util.BlogCacheUtil;
+import com.study.blog.util.RedisScriptUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -35,31 +52,143 @@ import java.util.stream.Collectors;
 @Slf4j
 @Service
 public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheService {
+    /**
+     * 空数据检测 + 续期
+     */
+    private static final DefaultRedisScript<Long> TOUCH_NULL_SCRIPT = RedisScriptUtil.load("lua/touchnull.lua",
+            Long.class);
+    private static final Long NULL_MARKED = 1L;
+    /**
+     * 空数据检测 + 查询点赞者 hash：返回 voteId / 0 未点赞 / -1 尚未加载 / -2 空数据
+     */
+    private static final DefaultRedisScript<Long> JUDGE_VOTED_SCRIPT = RedisScriptUtil.load("lua/judgevoted.lua",
+            Long.class);
+    private static final Long VOTER_ABSENT = -1L;
+    /**
+     * 加载点赞者 hash：已加载时不覆盖（检查与写入原子）
+     */
+    private static final DefaultRedisScript<Long> VOTER_LOAD_SCRIPT = RedisScriptUtil.load("lua/voterload.lua",
+            Long.class);
+    private static final Long VOTER_NULL_BLOG = -2L;
+    /**
+     * 点赞者 hash 的已加载标记字段（userId 从 1 开始）
+     */
+    private static final Integer VOTER_LOADED = 0;
+    /**
+     * 点赞 / 取消点赞：重复检测 + 分配 voteId + 记录点赞 + 点赞量，一次往返（只访问该博客的 key，见 markPending）
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> VOTE_SCRIPT = RedisScriptUtil.load("lua/vote.lua", List.class);
+    /**
+     * 新增 / 删除评论：重复检测 + 写入评论 + 评论量，一次往返（只访问该博客的 key，见 markPending）
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> COMMENT_SCRIPT = RedisScriptUtil.load("lua/comment.lua",
+            List.class);
+    private static final long VOTE_VOTER_ABSENT = -1L;
+    private static final long EVALUATION_ABSENT = -2L;
+    private static final long NULL_BLOG = -3L;
+    private static final long CHANGED = 1L;
+    /**
+     * 点赞者 hash、指标量 各加载一次之后再重试一次
+     */
+    private static final int LOAD_ATTEMPTS = 3;
+    private static final String PENDING_SEPARATOR = ":";
+    /**
+     * 待持久化集合的写入登记（pendingKey_RUNS：runId -> 开始时间）与 写入中集合（pendingKey_FLUSHING:runId）
+     */
+    private static final String PENDING_RUNS_SUFFIX = "_RUNS";
+    private static final String PENDING_FLUSHING_SUFFIX = "_FLUSHING:";
+    /**
+     * 分页获取评论：空数据检测 + 游标定位 + 读取本页评论，一次往返
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> COMMENT_PAGE_SCRIPT = RedisScriptUtil.load(
+            "lua/commentpage.lua", List.class);
+    private static final long COMMENT_INDEX_ABSENT = -1L;
+    /**
+     * 由评论 hash 建立评论索引：一次脚本，原子
+     */
+    private static final DefaultRedisScript<Long> COMMENT_INDEX_SCRIPT = RedisScriptUtil.load(
+            "lua/commentindex.lua", Long.class);
+    private static final int MAX_COMMENT_PAGE = 100;
+    private static final String CURSOR_SEPARATOR = "_";
+    /**
+     * 空数据检测 + 读取（+ 阅读量自增）指标量：一次往返
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> EVALUATION_SCRIPT = RedisScriptUtil.load("lua/evaluation.lua",
+            List.class);
+    private static final long EVALUATION_NULL = -1L;
+    private static final long EVALUATION_HIT = 1L;
+    /**
+     * 指标量 hash：整体写入 / 单个指标自增
+     */
+    private static final DefaultRedisScript<Long> EVALUATION_PUT_SCRIPT = RedisScriptUtil.load("lua/evalput.lua",
+            Long.class);
+    private static final DefaultRedisScript<Long> EVALUATION_INCR_SCRIPT = RedisScriptUtil.load("lua/evalincr.lua",
+            Long.class);
+    private static final int READ = 1;
+    private static final int COMMENT = 2;
+    private static final int VOTE = 3;
+    /**
+     * 旧数据（旧的三个全局 hash、旧格式的指标量 hash）-> 指标量 hash
+     */
+    private static final DefaultRedisScript<Long> EVALUATION_MIGRATE_SCRIPT = RedisScriptUtil.load(
+            "lua/evalmigrate.lua", Long.class);
+    private static final DefaultRedisScript<Long> HASH_GET_DELETE_SCRIPT = RedisScriptUtil.load("lua/hgetdel.lua",
+            Long.class);
+    @SuppressWarnings("deprecation")
+    private static final List<String> LEGACY_COUNT_KEYS = Arrays.asList(CacheConstant.READING_COUNT,
+            CacheConstant.COMMENT_COUNT, CacheConstant.VOTE_COUNT);
+    /**
+     * hash tag 之前的每博客 key（KEY:blogId），迁移到 KEY:{blogId}
+     */
+    private static final List<String> UNTAGGED_KEYS = Arrays.asList(CacheConstant.EVALUATION, CacheConstant.COMMENT,
+            CacheConstant.COMMENT_INDEX, CacheConstant.VOTE, CacheConstant.VOTER);
+    /**
+     * 上次写入数据库之后的增量：转入刷新中 / 写入成功后删除 / 写入失败后加回
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_DELTA_SCRIPT = RedisScriptUtil.load("lua/claimdelta.lua",
+            List.class);
+    private static final DefaultRedisScript<Long> COMMIT_DELTA_SCRIPT = RedisScriptUtil.load(
+            "lua/commitdelta.lua", Long.class);
+    private static final DefaultRedisScript<Long> RESTORE_DELTA_SCRIPT = RedisScriptUtil.load(
+            "lua/restoredelta.lua", Long.class);
+    private static final long CLAIMED_BY_OTHERS = -1L;
+    private static final String MIGRATE_RUN_ID = "migrate";
+    /**
+     * 旧数据迁移：最多扫描的轮数（每一轮迁移期间，旧版本节点可能仍在写入旧数据）
+     */
+    private static final int MIGRATE_PASSES = 3;
+    private static final int SCAN_COUNT = 1000;
+
     private final RedisTemplate<String, Object> redisTemplate;
     private final BlogEvaluationRepository blogEvaluationRepository;
-    private final LimitFlowLock2Park limitFlowLock2Park;
-    private final LimitFlowLock2Wait limitFlowLock2Wait;
+    private final BlogEvaluationBatchWriter blogEvaluationBatchWriter;
+    private final LimitFlowLock2Future limitFlowLock2Future;
+    private final IDService idService;
+    private final long flushLeaseMillis;
+    /**
+     * 旧数据（旧的三个全局 hash、旧格式的 key）是否已迁移完毕（EVAL_MIGRATED 的本地副本）
+     */
+    private volatile boolean legacyMigrated;
 
 
     @Autowired
     public BlogEvaluationCacheServiceImpl(RedisTemplate<String, Object> redisTemplate,
-                                          BlogEvaluationRepository blogEvaluationRepository) {
+                                          BlogEvaluationRepository blogEvaluationRepository,
+                                          BlogEvaluationBatchWriter blogEvaluationBatchWriter,
+                                          LimitFlowLockRegistry limitFlowLockRegistry, IDService idService,
+                                          @Value("${blog.evaluation.flush.lease-millis:600000}")
+                                                  long flushLeaseMillis) {
         this.redisTemplate = redisTemplate;
         this.blogEvaluationRepository = blogEvaluationRepository;
-        this.limitFlowLock2Park = getLimitFlowLock2Park();
-        this.limitFlowLock2Wait = getLimitFlowLock2Wait();
-    }
-
-    private LimitFlowLock2Wait getLimitFlowLock2Wait() {
-        LimitFlowLock2Wait limitFlowLock2Wait = new LimitFlowLock2Wait();
-        log.info("【Lock_EVALUATION】:{}", limitFlowLock2Wait);
-        return limitFlowLock2Wait;
-    }
-
-    private LimitFlowLock2Park getLimitFlowLock2Park() {
-        LimitFlowLock2Park limitFlowLock2Park = new LimitFlowLock2Park();
-        log.info("【Lock_EVALUATION】:{}", limitFlowLock2Park);
-        return limitFlowLock2Park;
+        this.blogEvaluationBatchWriter = blogEvaluationBatchWriter;
+        this.limitFlowLock2Future = limitFlowLockRegistry.lock(LimitFlowDomain.EVALUATION);
+        this.idService = idService;
+        this.flushLeaseMillis = flushLeaseMillis;
     }
 
     /**
@@ -70,63 +199,181 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      */
     @Override
     public Integer getReadingCountByBlogId(Long blogId) {
-        // 首先：空数据判断
-        judgeBlogInfoNull(blogId);
-
-        Object object = redisTemplate.opsForHash().get(CacheConstant.READING_COUNT, blogId);
-        if (!Objects.isNull(object)) {
-            try {
-                return JSONObject.parseObject(object.toString(), Integer.class);
-            } catch (Exception e) {
-                log.info("【获取阅读量】 json->Integer 转换失败");
-            }
+        if (Objects.isNull(blogId)) {
+            throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
+        }
+        // 空数据判断 + 读取：一次往返
+        BlogEvaluationCacheDTO blogEvaluation = evaluateByScript(blogId, 0L);
+        if (!Objects.isNull(blogEvaluation)) {
+            return blogEvaluation.getReadingCount();
         }
         // 从数据库中刷新到缓存
         return getBlogEvaluationFromMysql(blogId).getReadingCount();
     }
 
     /**
-     * 根据 blogId 获取 comment list
+     * 分页获取评论：按发表时间排序，游标为上一页最后一条评论的 发表时间_commentId
+     * commentpage.lua 在评论索引（zset）上按游标定位，只读取本页的评论内容，开销与页大小成正比，与评论总数无关
      *
      * @param blogId blogId
-     * @return comment list
+     * @param cursor 游标：为 null 时从第一条评论开始
+     * @param limit  本页条数
+     * @return 一页评论
      */
     @Override
-    public List<Comment> getBlogCommentListByBlogId(Long blogId) {
-        // 首先：空数据判断
-        judgeBlogInfoNull(blogId);
+    @SuppressWarnings("unchecked")
+    public CommentPageDTO getBlogCommentPage(Long blogId, String cursor, int limit) {
+        if (Objects.isNull(blogId)) {
+            throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
+        }
+        int size = Math.min(Math.max(limit, 1), MAX_COMMENT_PAGE);
+        long[] position = parseCursor(cursor);
+        List<String> keys = Arrays.asList(nullKey(blogId), commentIndexKey(blogId),
+                BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId), evaluationKey(blogId));
+        for (int attempt = 0; attempt < LOAD_ATTEMPTS; attempt++) {
+            // 多取一条：判断是否有下一页
+            List<Object> result = redisTemplate.execute(COMMENT_PAGE_SCRIPT, keys, position[0], position[1],
+                    size + 1);
+            long status = ((Number) result.get(0)).longValue();
+            if (status == NULL_BLOG) {
+                throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
+            }
+            if (status == COMMENT_INDEX_ABSENT) {
+                rebuildCommentIndex(blogId);
+            } else if (status == EVALUATION_ABSENT) {
+                getBlogEvaluationFromMysql(blogId);
+            } else {
+                return toCommentPage(result, size);
+            }
+        }
+        throw new LimitFlowException(blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+    }
 
-        String commentKey = BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId);
-        List<Object> commentObj = redisTemplate.opsForHash().values(commentKey);
-        try {
-            return commentObj.stream().map(
-                    comment -> JSONObject.parseObject(comment.toString(), Comment.class)).collect(Collectors.toList()
-            );
-        } catch (Exception e) {
-            log.info("【获取评论列表】 json->Comment 转换失败");
+    /**
+     * {状态, 第一条评论的排名, commentId, score, 评论, ...} -> 一页评论：
+     * 评论内容不存在（与评论 hash 不一致的残留成员）时跳过，游标仍然前进
+     */
+    private CommentPageDTO toCommentPage(List<Object> result, int size) {
+        int count = (result.size() - 2) / 3;
+        List<Comment> comments = new ArrayList<>(Math.min(count, size));
+        String nextCursor = null;
+        for (int i = 0; i < Math.min(count, size); i++) {
+            Object body = result.get(2 + i * 3 + 2);
+            if (!Objects.isNull(body)) {
+                comments.add(JSONObject.parseObject(body.toString(), Comment.class));
+            }
+            if (count > size && i == size - 1) {
+                nextCursor = ((Number) result.get(2 + i * 3 + 1)).longValue() + CURSOR_SEPARATOR
+                        + result.get(2 + i * 3);
+            }
+        }
+        return new CommentPageDTO(comments, ((Number) result.get(1)).longValue(), nextCursor);
+    }
+
+    /**
+     * 发表时间_commentId -> {score, commentId}：为 null 或格式错误时从第一条评论开始
+     */
+    private long[] parseCursor(String cursor) {
+        if (!Objects.isNull(cursor)) {
+            String[] parts = cursor.split(CURSOR_SEPARATOR);
+            try {
+                if (parts.length == 2) {
+                    return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+                }
+            } catch (NumberFormatException e) {
+                log.error("【获取评论列表】游标格式错误：{}", cursor);
+            }
+        }
+        return new long[]{-1L, 0L};
+    }
+
+    /**
+     * 由评论 hash 建立评论索引（lua/commentindex.lua）：评论索引上线之前加载的博客只有评论 hash
+     * 读取评论与写入索引在同一个脚本中完成，期间的新增 / 删除评论（comment.lua）不会与之交错
+     */
+    private void rebuildCommentIndex(Long blogId) {
+        Long indexed = redisTemplate.execute(COMMENT_INDEX_SCRIPT, Arrays.asList(
+                BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId), commentIndexKey(blogId)));
+        log.info("【评论索引】blogId：{}，建立索引：{} 条评论", blogId, indexed);
+    }
+
+    private void saveCommentIndex(Long blogId, List<Comment> comments) {
+        if (comments.isEmpty()) {
+            return;
         }
-        return getBlogEvaluationFromMysql(blogId).getComments();
+        Set<ZSetOperations.TypedTuple<Object>> tuples = comments.stream().map(comment ->
+                new DefaultTypedTuple<Object>(comment.getId(), (double) commentScore(comment)))
+                .collect(Collectors.toSet());
+        redisTemplate.opsForZSet().add(commentIndexKey(blogId), tuples);
+    }
+
+    private static long commentScore(Comment comment) {
+        return Objects.isNull(comment.getCreateTime()) ? 0L : comment.getCreateTime().getTime();
+    }
+
+    private String commentIndexKey(Long blogId) {
+        return BlogCacheUtil.generateKey(CacheConstant.COMMENT_INDEX, blogId);
     }
 
     /**
-     * 根据 blogId 获取 vote list
+     * 判断用户是否已点赞：空数据检测 + 查询点赞者 hash，一次往返
+     * 点赞者 hash 尚未加载时，从数据库加载该博客的点赞者
      *
      * @param blogId blogId
      * @param userId userId
-     * @return vote list
+     * @return voteId：已点赞 0：未点赞（空数据也返回 0）
      */
     @Override
     public Long judgeVotedById(Long blogId, Integer userId) {
-        String voteKey = BlogCacheUtil.generateKey(CacheConstant.VOTE, blogId);
-        String userKey = BlogCacheUtil.generateKey(CacheConstant.USER_ID, userId);
-        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
-        redisScript.setLocation(new ClassPathResource("lua/judgevoted.lua"));
-        redisScript.setResultType(Long.class);
-        ArrayList<String> voteKeyList = new ArrayList<>(1);
-        ArrayList<String> userKeyList = new ArrayList<>(1);
-        voteKeyList.add(voteKey);
-        userKeyList.add(userKey);
-        return redisTemplate.execute(redisScript, voteKeyList, userKeyList);
+        if (Objects.isNull(blogId) || Objects.isNull(userId)) {
+            return 0L;
+        }
+        Long voteId = redisTemplate.execute(JUDGE_VOTED_SCRIPT, Arrays.asList(nullKey(blogId),
+                voterKey(blogId)), userId, TimeUnit.SECONDS.toMillis(CacheConstant.EXPIRE));
+        if (Objects.isNull(voteId) || Objects.equals(voteId, VOTER_NULL_BLOG)) {
+            return 0L;
+        }
+        if (!Objects.equals(voteId, VOTER_ABSENT)) {
+            return voteId;
+        }
+        List<Vote> votes = loadVoters(blogId);
+        // 点赞者 hash 可能已由其他请求加载（包含尚未写入数据库的点赞），以 Redis 中的状态为准
+        voteId = redisTemplate.execute(JUDGE_VOTED_SCRIPT, Arrays.asList(nullKey(blogId), voterKey(blogId)), userId,
+                TimeUnit.SECONDS.toMillis(CacheConstant.EXPIRE));
+        if (!Objects.isNull(voteId) && voteId >= 0) {
+            return voteId;
+        }
+        return votes.stream().filter(vote -> Objects.equals(vote.getUserId(), userId)).map(Vote::getId)
+                .findFirst().orElse(0L);
+    }
+
+    /**
+     * 从数据库加载点赞者：与其他冷加载一样经过 EVALUATION 限流器，热门博客的点赞者 hash 被淘汰时不会压垮数据库
+     *
+     * @return 数据库中的点赞
+     */
+    private List<Vote> loadVoters(Long blogId) {
+        List<Vote> votes = limitFlowLock2Future.withPermission(blogId,
+                () -> blogEvaluationRepository.findVoteListByBlogId(blogId));
+        saveVotersIfAbsent(blogId, votes);
+        return votes;
+    }
+
+    /**
+     * 加载点赞者 hash（lua/voterload.lua）：userId -> voteId，并写入已加载标记
+     * 已加载时不覆盖：点赞者 hash 中可能有尚未写入数据库的点赞 / 取消点赞
+     */
+    private void saveVotersIfAbsent(Long blogId, List<Vote> votes) {
+        Object[] voters = new Object[votes.size() << 1];
+        for (int i = 0; i < votes.size(); i++) {
+            voters[i << 1] = votes.get(i).getUserId();
+            voters[(i << 1) + 1] = votes.get(i).getId();
+        }
+        redisTemplate.execute(VOTER_LOAD_SCRIPT, Collections.singletonList(voterKey(blogId)), voters);
+    }
+
+    private String voterKey(Long blogId) {
+        return BlogCacheUtil.generateKey(CacheConstant.VOTER, blogId);
     }
 
     /**
@@ -173,9 +420,10 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
             log.error("参数为 null");
             throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
         }
-        Boolean judge = redisTemplate.hasKey(blogId.toString());
-        if (!Objects.isNull(judge) && judge) {
-            redisTemplate.expire(blogId.toString(), CacheConstant.EXPIRE, TimeUnit.SECONDS);
+        // 空数据检测 + 续期：一次往返
+        Long judge = redisTemplate.execute(TOUCH_NULL_SCRIPT, Collections.singletonList(nullKey(blogId)),
+                TimeUnit.SECONDS.toMillis(CacheConstant.EXPIRE));
+        if (Objects.equals(judge, NULL_MARKED)) {
             throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
         }
     }
@@ -187,7 +435,10 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      * @return dto
      */
     private BlogEvaluationCacheDTO judgeBlogNull(Long blogId) {
-        judgeBlogInfoNull(blogId);
+        if (Objects.isNull(blogId)) {
+            throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
+        }
+        // 空数据检测 与 查询缓存 由 evaluation.lua 一次完成
         return getBlogEvaluationByBlogId2Redis(blogId);
     }
 
@@ -237,20 +488,15 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      * @return blogEvaluation
      */
     private BlogEvaluationCacheDTO flushCacheByMySQL2Split(Long blogId) {
-        BlogEvaluationCacheDTO blogEvaluation;
-        try {
-            blogEvaluation = mergeEvaluation(blogId
-                    , blogEvaluationRepository.findVoteListByBlogId(blogId)
-                    , blogEvaluationRepository.findCommentListByBlogId(blogId)
-                    , blogEvaluationRepository.findBlogInfoByBlogId(blogId)
-            );
-        } finally {
-            // 首先释放许可证：提高系统吞吐量！
-            // finally 保证许可证被释放！
-            limitFlowLock2Wait.releasePermission();
-        }
+        // 访问完数据库之后立即释放许可证，提高系统吞吐量！
+        BlogEvaluationCacheDTO blogEvaluation = limitFlowLock2Future.withPermission(blogId, () -> mergeEvaluation(
+                blogId
+                , blogEvaluationRepository.findVoteListByBlogId(blogId)
+                , blogEvaluationRepository.findCommentListByBlogId(blogId)
+                , blogEvaluationRepository.findBlogInfoByBlogId(blogId)
+        ));
         if (Objects.isNull(blogEvaluation)) {
-            redisTemplate.opsForValue().set(String.valueOf(blogId), CacheConstant.NULL, CacheConstant.EXPIRE,
+            redisTemplate.opsForValue().set(nullKey(blogId), CacheConstant.NULL, CacheConstant.EXPIRE,
                     TimeUnit.SECONDS);
             throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
         }
@@ -266,16 +512,11 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      * @return blogEvaluation
      */
     private BlogEvaluationCacheDTO flushCacheByMySQL2Join(Long blogId) {
-        BlogEvaluationCacheDTO blogEvaluation;
-        try {
-            blogEvaluation = blogEvaluationRepository.findByBlogId(blogId);
-        } finally {
-            // 首先释放许可证：提高系统吞吐量！
-            // finally 保证许可证被释放！
-            limitFlowLock2Wait.releasePermission();
-        }
+        // 访问完数据库之后立即释放许可证，提高系统吞吐量！
+        BlogEvaluationCacheDTO blogEvaluation = limitFlowLock2Future.withPermission(blogId,
+                () -> blogEvaluationRepository.findByBlogId(blogId));
         if (Objects.isNull(blogEvaluation)) {
-            redisTemplate.opsForValue().set(String.valueOf(blogId), CacheConstant.NULL, CacheConstant.EXPIRE,
+            redisTemplate.opsForValue().set(nullKey(blogId), CacheConstant.NULL, CacheConstant.EXPIRE,
                     TimeUnit.SECONDS);
             throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
         }
@@ -306,98 +547,470 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      */
     @Override
     public BlogEvaluationCacheDTO getBlogEvaluationFromMysql(Long blogId) {
-        BlogEvaluationCacheDTO blogEvaluationCache;
-        if (limitFlowLock2Wait.limitRequestPass(blogId, () -> Objects.isNull(judgeBlogNull(blogId)), false)) {
-            try {
-                blogEvaluationCache = flushCacheByMySQL2Split(blogId);
-            } finally {
-                // 保证锁被释放
-                // limitFlowLock2Park.releaseLock(blogId);
-                limitFlowLock2Wait.releaseLock(blogId);
-            }
-        } else {
-            // 这部分线程 是被阻塞后，被唤醒的
-            blogEvaluationCache = judgeBlogNull(blogId);
-            if (Objects.isNull(blogEvaluationCache)) {
-                throw new LimitFlowException("Blog:" + blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
-            }
-        }
-        return blogEvaluationCache;
+        // 限流：只有一个线程访问数据库，其余线程被阻塞，苏醒后直接取走该线程加载的结果（不再查询缓存）
+        return limitFlowLock2Future.load(blogId, () -> judgeBlogNull(blogId), () -> flushCacheByMySQL2Split(blogId));
+    }
+
+    @Override
+    public BlogEvaluationCacheDTO getBlogEvaluationFromMysql(Long blogId,
+                                                             Supplier<BlogEvaluationCacheDTO> staleReader) {
+        return limitFlowLock2Future.load(blogId, () -> judgeBlogNull(blogId), () -> flushCacheByMySQL2Split(blogId),
+                staleReader);
     }
 
     /**
-     * 将 数据 更新入 数据库中 ： 定时更新入 mysql
-     * 只更新 readingCount、commentCount、voteCount
+     * 将 数据 更新入 数据库中 ： 定时（每隔几秒）更新入 mysql
+     * 只写入上次刷新之后的增量（read_count = read_count + ?），并且只处理指标量发生变化的博客
+     * <p>
+     * 1. 接管已崩溃的刷新（旧数据由 migrateLegacyEvaluationOnStartup 在启动时一次性迁移）
+     * 2. 每次刷新有自己的 runId：登记到 EVAL_FLUSH_RUNS（runId -> 开始时间），刷新中集合为 EVAL_FLUSHING:runId
+     * 3. SSCAN 待刷新集合（EVAL_DIRTY），每 SCAN_COUNT 个博客：记入刷新中集合，从待刷新集合移除，
+     * 再通过 pipeline 执行 lua/claimdelta.lua，原子地将增量转入刷新中的 field（此后的自增记入新的增量）
+     * 4. 通过 BlogEvaluationBatchWriter 分块写入数据库：成功的删除刷新中的增量（lua/commitdelta.lua），
+     * 失败的加回增量（lua/restoredelta.lua），下次刷新重试
+     * 5. 删除刷新中集合，注销 runId
+     * <p>
+     * 增量在写入数据库之后才删除：刷新中途崩溃时，超过租期（blog.evaluation.flush.lease-millis）之后，
+     * 刷新中集合重新记入待刷新集合，遗留的增量由之后的刷新合并写入（写入数据库之后、删除增量之前崩溃时，会重复写入一次）
+     * <p>
+     * 缓存被淘汰后从数据库重新加载、多个节点的刷新交错执行，都不会使数据库中的指标量回退；
+     * 从旧的全局 hash 迁移来的博客（abs 标记）不知道增量，整体覆盖一次
      */
     @Override
     public void saveBlogEvaluation2Mysql() {
-        // readCount
-        Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(CacheConstant.READING_COUNT,
-                ScanOptions.NONE);
-        Map<Long, Long> readCountMap = new HashMap<>(1);
-        Long blogId;
-        Long readCount = null;
-        Map.Entry<Object, Object> entry;
-        while (cursor.hasNext()) {
-            entry = cursor.next();
+        recoverFlushRuns();
+
+        String runId = UUID.randomUUID().toString();
+        String flushingKey = flushingKey(runId);
+        redisTemplate.opsForHash().put(CacheConstant.EVALUATION_FLUSH_RUNS, runId, System.currentTimeMillis());
+        // 异常、增量加回失败时保留登记：超过租期之后由之后的刷新接管
+        if (flush(runId, flushingKey)) {
+            redisTemplate.delete(flushingKey);
+            redisTemplate.opsForHash().delete(CacheConstant.EVALUATION_FLUSH_RUNS, runId);
+        }
+    }
+
+    /**
+     * @return false：有增量加回失败
+     */
+    private boolean flush(String runId, String flushingKey) {
+        List<BlogEvaluationCacheDTO> deltas = new ArrayList<>();
+        List<BlogEvaluationCacheDTO> absolutes = new ArrayList<>();
+        List<Long> claimedByOthers = new ArrayList<>();
+        List<Long> blogIds = new ArrayList<>(SCAN_COUNT);
+        int dirty = 0;
+        try (Cursor<Object> cursor = redisTemplate.opsForSet().scan(CacheConstant.EVALUATION_DIRTY,
+                ScanOptions.scanOptions().count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                Object blogId = cursor.next();
+                try {
+                    blogIds.add(JSONObject.parseObject(blogId.toString(), Long.class));
+                    dirty++;
+                } catch (Exception e) {
+                    log.error("【 {} ：redis -> mysql 】类型转换异常:{}", blogId, e.getMessage());
+                    redisTemplate.opsForSet().remove(CacheConstant.EVALUATION_DIRTY, blogId);
+                }
+                if (blogIds.size() >= SCAN_COUNT) {
+                    claimDelta(runId, flushingKey, blogIds, deltas, absolutes, claimedByOthers);
+                    blogIds.clear();
+                }
+            }
+        }
+        claimDelta(runId, flushingKey, blogIds, deltas, absolutes, claimedByOthers);
+        // 正在由其他刷新处理的博客：重新记入待刷新集合，下次刷新时处理期间新增的增量
+        if (!claimedByOthers.isEmpty()) {
+            redisTemplate.opsForSet().add(CacheConstant.EVALUATION_DIRTY, claimedByOthers.toArray());
+        }
+        if (dirty == 0) {
+            return true;
+        }
+        log.info("【指标量刷新】{}：待刷新 {} 个博客，增量 {} 个，覆盖 {} 个，其他刷新处理中 {} 个", runId, dirty,
+                deltas.size(), absolutes.size(), claimedByOthers.size());
+
+        // 分块写入，每块一个短事务：防止耗时的操作占用事务，导致 SQL 连接被耗尽
+        List<BlogEvaluationCacheDTO> failed = new ArrayList<>(blogEvaluationBatchWriter.increment(deltas));
+        failed.addAll(blogEvaluationBatchWriter.overwrite(absolutes));
+        Set<Long> failedIds = failed.stream().map(BlogEvaluationCacheDTO::getBlogId).collect(Collectors.toSet());
+        List<Long> committed = new ArrayList<>(deltas.size() + absolutes.size());
+        deltas.forEach(delta -> committed.add(delta.getBlogId()));
+        absolutes.forEach(evaluation -> committed.add(evaluation.getBlogId()));
+        committed.removeAll(failedIds);
+        evalPipelined(COMMIT_DELTA_SCRIPT, committed, runId);
+        return failedIds.stream().filter(blogId -> !restoreDelta(runId, blogId)).count() == 0;
+    }
+
+    /**
+     * 记入刷新中集合、从待刷新集合移除之后，pipeline 批量将增量转入刷新中的 field：
+     * 没有增量的博客（包括已删除的博客）被忽略
+     *
+     * @param deltas          转入的增量
+     * @param absolutes       需要整体覆盖的指标量
+     * @param claimedByOthers 正在由其他刷新处理的博客
+     */
+    @SuppressWarnings("unchecked")
+    private void claimDelta(String runId, String flushingKey, List<Long> blogIds, List<BlogEvaluationCacheDTO> deltas,
+                            List<BlogEvaluationCacheDTO> absolutes, List<Long> claimedByOthers) {
+        if (blogIds.isEmpty()) {
+            return;
+        }
+        redisTemplate.opsForSet().add(flushingKey, blogIds.toArray());
+        redisTemplate.opsForSet().remove(CacheConstant.EVALUATION_DIRTY, blogIds.toArray());
+        List<Object> results = evalPipelined(CLAIM_DELTA_SCRIPT, blogIds, runId, System.currentTimeMillis(),
+                flushLeaseMillis);
+        for (int i = 0; i < blogIds.size(); i++) {
+            Long blogId = blogIds.get(i);
             try {
-                blogId = JSONObject.parseObject(entry.getKey().toString(), Long.class);
-                readCount = JSONObject.parseObject(entry.getValue().toString(), Long.class);
-                readCountMap.put(blogId, readCount);
+                List<Long> counts = (List<Long>) results.get(i);
+                BlogEvaluationCacheDTO evaluation = new BlogEvaluationCacheDTO();
+                evaluation.setBlogId(blogId);
+                if (counts.get(0) == CLAIMED_BY_OTHERS) {
+                    claimedByOthers.add(blogId);
+                } else if (counts.get(0) == 1L) {
+                    evaluation.setReadingCount(toCount(counts.get(4)));
+                    evaluation.setCommentCount(toCount(counts.get(5)));
+                    evaluation.setVoteCount(toCount(counts.get(6)));
+                    absolutes.add(evaluation);
+                } else if (counts.get(1) != 0 || counts.get(2) != 0 || counts.get(3) != 0) {
+                    evaluation.setReadingCount(counts.get(1).intValue());
+                    evaluation.setCommentCount(counts.get(2).intValue());
+                    evaluation.setVoteCount(counts.get(3).intValue());
+                    deltas.add(evaluation);
+                }
             } catch (Exception e) {
                 // todo 类型转换异常
-                log.error("【 readCount ：redis -> mysql 】类型转换异常:{}", e.getMessage());
+                log.error("【 {} ：redis -> mysql 】类型转换异常:{}", blogId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * pipeline：每个博客的指标量 hash 执行一次脚本，一次往返
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> evalPipelined(DefaultRedisScript<?> redisScript, List<Long> blogIds, Object... args) {
+        if (blogIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        byte[][] keysAndArgs = new byte[args.length + 1][];
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[i + 1] = valueSerializer.serialize(args[i]);
+        }
+        return evalShaPipelined(redisScript, blogIds.size(), 1, i -> {
+            byte[][] params = keysAndArgs.clone();
+            params[0] = rawKey(evaluationKey(blogIds.get(i)));
+            return params;
+        });
+    }
+
+    /**
+     * pipeline 执行脚本：EVALSHA 只发送 sha1，不必每条命令都带上脚本源码
+     * 节点上没有缓存该脚本（NOSCRIPT：重启、SCRIPT FLUSH、集群新增节点）时，这些命令改用 EVAL 重新执行，
+     * EVAL 同时缓存了脚本，之后的 EVALSHA 可以命中
+     * 只重新执行 NOSCRIPT 的命令：pipeline 中其余的命令已经执行（如累加阅读量），不能重复执行
+     *
+     * @param redisScript 脚本
+     * @param size        命令数
+     * @param numKeys     key 的数量
+     * @param keysAndArgs 第 i 条命令的 keys + args
+     * @return 每条命令的结果
+     */
+    private List<Object> evalShaPipelined(DefaultRedisScript<?> redisScript, int size, int numKeys,
+                                          IntFunction<byte[][]> keysAndArgs) {
+        ReturnType returnType = ReturnType.fromJavaType(redisScript.getResultType());
+        String sha1 = redisScript.getSha1();
+        List<Object> results;
+        try {
+            return pipelined(size, (connection, i) -> connection.evalSha(sha1, returnType, numKeys,
+                    keysAndArgs.apply(i)));
+        } catch (RedisPipelineException e) {
+            results = new ArrayList<>(e.getPipelineResult());
+            if (results.size() != size || results.stream().anyMatch(result -> result instanceof Throwable
+                    && !isNoScript((Throwable) result))) {
+                throw e;
+            }
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (results.get(i) instanceof Throwable) {
+                missing.add(i);
+            }
+        }
+        byte[] script = redisScript.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        List<Object> retried = pipelined(missing.size(), (connection, j) -> connection.eval(script, returnType,
+                numKeys, keysAndArgs.apply(missing.get(j))));
+        for (int j = 0; j < missing.size(); j++) {
+            results.set(missing.get(j), retried.get(j));
+        }
+        return results;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; !Objects.isNull(cause); cause = cause.getCause()) {
+            if (!Objects.isNull(cause.getMessage()) && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
             }
         }
-        // commentCount
-        cursor = redisTemplate.opsForHash().scan(CacheConstant.COMMENT_COUNT, ScanOptions.NONE);
-        Map<Long, Long> commentCountMap = new HashMap<>(1);
-        Long commentCount;
-        while (cursor.hasNext()) {
-            entry = cursor.next();
+        return false;
+    }
+
+    /**
+     * 写入数据库失败：将刷新中的增量（或 abs 标记）加回 Redis，并重新记入待刷新集合
+     *
+     * @return false：加回失败
+     */
+    private boolean restoreDelta(String runId, Long blogId) {
+        try {
+            redisTemplate.execute(RESTORE_DELTA_SCRIPT, Collections.singletonList(evaluationKey(blogId)), runId);
+            markDirty(blogId);
+            return true;
+        } catch (Exception e) {
+            log.error("【指标量刷新】blog:{} 增量加回失败，超过租期后由之后的刷新接管:{}", blogId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 接管已崩溃的刷新：开始时间超过租期的 runId，其刷新中集合重新记入待刷新集合，
+     * 遗留在指标量 hash 中的刷新中的增量由 lua/claimdelta.lua 合并
+     */
+    private void recoverFlushRuns() {
+        long now = System.currentTimeMillis();
+        redisTemplate.opsForHash().entries(CacheConstant.EVALUATION_FLUSH_RUNS).forEach((runId, startMillis) -> {
+            if (now - ((Number) startMillis).longValue() < flushLeaseMillis) {
+                return;
+            }
+            int recovered = requeueFlushing(flushingKey(runId.toString()));
+            redisTemplate.opsForHash().delete(CacheConstant.EVALUATION_FLUSH_RUNS, runId);
+            log.error("【指标量刷新】{} 超过租期仍未完成，{} 个博客重新记入待刷新集合", runId, recovered);
+        });
+    }
+
+    /**
+     * 刷新中集合 -> 待刷新集合
+     *
+     * @return 博客数
+     */
+    private int requeueFlushing(String flushingKey) {
+        return requeue(flushingKey, CacheConstant.EVALUATION_DIRTY);
+    }
+
+    /**
+     * 集合 from -> 集合 to（SSCAN + SADD，集群模式下两者不在同一个 slot），之后删除 from
+     *
+     * @return 成员数
+     */
+    private int requeue(String from, String to) {
+        List<Object> members = new ArrayList<>();
+        try (Cursor<Object> cursor = redisTemplate.opsForSet().scan(from,
+                ScanOptions.scanOptions().count(SCAN_COUNT).build())) {
+            cursor.forEachRemaining(members::add);
+        }
+        if (!members.isEmpty()) {
+            redisTemplate.opsForSet().add(to, members.toArray());
+        }
+        redisTemplate.delete(from);
+        return members.size();
+    }
+
+    private String flushingKey(String runId) {
+        return CacheConstant.EVALUATION_FLUSHING + ":" + runId;
+    }
+
+    /**
+     * claimdelta.lua 中 -1 表示 field 不存在：保持数据库中的值不变
+     */
+    private Integer toCount(Long count) {
+        return count < 0 ? null : count.intValue();
+    }
+
+    /**
+     * 启动时迁移旧数据（一次性任务，不在请求与定时刷新的路径上）：
+     * （1）EVAL_MIGRATED 存在：已迁移完毕，直接返回（每个节点启动时只有一次 GET）
+     * （2）否则获取 EVAL_MIGRATING（SET NX，租期 blog.evaluation.flush.lease-millis）：其他节点正在迁移时返回
+     * （3）在后台线程中逐轮迁移，直到某一轮没有找到旧数据（最多 MIGRATE_PASSES 轮），之后写入 EVAL_MIGRATED
+     * <p>
+     * 迁移完成之前，缓存未命中的博客从数据库加载；其旧数据之后由 lua/evalmigrate.lua 合并到已加载的指标量 hash
+     */
+    @PostConstruct
+    void migrateLegacyEvaluationOnStartup() {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(CacheConstant.EVALUATION_MIGRATED))) {
+            legacyMigrated = true;
+            return;
+        }
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(CacheConstant.EVALUATION_MIGRATING,
+                System.currentTimeMillis(), flushLeaseMillis, TimeUnit.MILLISECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.info("【指标量迁移】其他节点正在迁移");
+            return;
+        }
+        Thread migrator = new Thread(() -> {
             try {
-                blogId = JSONObject.parseObject(entry.getKey().toString(), Long.class);
-                commentCount = JSONObject.parseObject(entry.getValue().toString(), Long.class);
-                commentCountMap.put(blogId, commentCount);
+                for (int pass = 0; pass < MIGRATE_PASSES; pass++) {
+                    if (migrateLegacyEvaluation() == 0) {
+                        redisTemplate.opsForValue().set(CacheConstant.EVALUATION_MIGRATED, System.currentTimeMillis());
+                        legacyMigrated = true;
+                        log.info("【指标量迁移】迁移完毕");
+                        return;
+                    }
+                }
+                log.error("【指标量迁移】{} 轮之后仍有旧数据（旧版本节点仍在运行？），下次启动时继续", MIGRATE_PASSES);
             } catch (Exception e) {
-                // todo 类型转换异常
-                log.error("【 commentCount ：redis -> mysql 】类型转换异常:{}", e.getMessage());
+                log.error("【指标量迁移】迁移异常，下次启动时继续：{}", e.getMessage());
+            } finally {
+                redisTemplate.delete(CacheConstant.EVALUATION_MIGRATING);
+            }
+        }, "evaluation-migrate");
+        migrator.setDaemon(true);
+        migrator.start();
+    }
+
+    /**
+     * 迁移一轮旧数据：
+     * （1）旧的三个全局 hash（EVALUATION_READING_COUNT / COMMENT_COUNT / VOTE_COUNT）-> 指标量 hash
+     * （2）hash tag 之前的每博客 key（KEY:blogId）-> KEY:{blogId}
+     * （3）旧版本的刷新中集合（全局的 EVAL_FLUSHING）-> 待刷新集合
+     * <p>
+     * HSCAN 旧 hash、SCAN 旧格式的 key，逐个博客迁移
+     * 旧格式的 key 只存在于单机部署（旧的脚本在集群模式下跨 slot，无法执行），迁移时的 RENAME 不会跨 slot
+     *
+     * @return 找到旧数据的博客数
+     */
+    int migrateLegacyEvaluation() {
+        // 旧版本的刷新中集合（全局的 EVAL_FLUSHING）
+        requeueFlushing(CacheConstant.EVALUATION_FLUSHING);
+        Set<Long> blogIds = new HashSet<>();
+        for (String legacyKey : LEGACY_COUNT_KEYS) {
+            try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(legacyKey,
+                    ScanOptions.scanOptions().count(SCAN_COUNT).build())) {
+                cursor.forEachRemaining(entry -> {
+                    try {
+                        blogIds.add(JSONObject.parseObject(entry.getKey().toString(), Long.class));
+                    } catch (Exception e) {
+                        log.error("【指标量迁移】blog:{} 类型转换异常:{}", entry.getKey(), e.getMessage());
+                    }
+                });
             }
         }
-        // voteCount
-        cursor = redisTemplate.opsForHash().scan(CacheConstant.VOTE_COUNT, ScanOptions.NONE);
-        Map<Long, Long> voteCountMap = new HashMap<>(1);
-        Long voteCount;
-        while (cursor.hasNext()) {
-            entry = cursor.next();
+        UNTAGGED_KEYS.forEach(kind -> blogIds.addAll(scanUntaggedKeys(kind)));
+        int migrated = 0;
+        for (Long blogId : blogIds) {
             try {
-                blogId = JSONObject.parseObject(entry.getKey().toString(), Long.class);
-                voteCount = JSONObject.parseObject(entry.getValue().toString(), Long.class);
-                voteCountMap.put(blogId, voteCount);
+                if (migrateLegacyEvaluation(blogId)) {
+                    migrated++;
+                }
             } catch (Exception e) {
-                // todo 类型转换异常
-                log.error("【 voteCount ：redis -> mysql 】类型转换异常:{}", e.getMessage());
+                log.error("【指标量迁移】blog:{} 迁移异常:{}", blogId, e.getMessage());
+            }
+        }
+        log.info("【指标量迁移】本次迁移 {} 个博客", migrated);
+        return blogIds.size();
+    }
+
+    /**
+     * SCAN 旧格式的 key：key 经过序列化（可能带引号），只匹配 : 之后紧跟数字的 key，KEY:{blogId} 不会被匹配
+     *
+     * @param kind key 前缀
+     * @return blogIds
+     */
+    @SuppressWarnings("unchecked")
+    private Set<Long> scanUntaggedKeys(String kind) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        String prefix = kind + ":";
+        Set<Long> blogIds = new HashSet<>();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match("*" + prefix + "[0-9]*")
+                    .count(SCAN_COUNT).build())) {
+                cursor.forEachRemaining(rawKey -> {
+                    String key = keySerializer.deserialize(rawKey);
+                    if (!Objects.isNull(key) && key.startsWith(prefix) && key.substring(prefix.length())
+                            .matches("\\d+")) {
+                        blogIds.add(Long.valueOf(key.substring(prefix.length())));
+                    }
+                });
             }
+            return null;
+        });
+        return blogIds;
+    }
+
+    /**
+     * 迁移单个博客：旧格式的 key，以及旧的全局 hash 中的指标量
+     * 旧的全局 hash 中的指标量由 lua/hgetdel.lua 取走，多个节点同时迁移时只合并一次
+     *
+     * @param blogId blogId
+     * @return true：已迁移
+     */
+    private boolean migrateLegacyEvaluation(Long blogId) {
+        boolean migrated = false;
+        for (String kind : UNTAGGED_KEYS) {
+            migrated |= migrateUntaggedKey(kind, blogId);
+        }
+        long[] counts = new long[LEGACY_COUNT_KEYS.size()];
+        boolean found = false;
+        for (int i = 0; i < counts.length; i++) {
+            Long count = redisTemplate.execute(HASH_GET_DELETE_SCRIPT,
+                    Collections.singletonList(LEGACY_COUNT_KEYS.get(i)), blogId);
+            counts[i] = Objects.isNull(count) ? -1L : count;
+            found |= !Objects.isNull(count);
+        }
+        if (found) {
+            // 旧的全局 hash 只有总量，不知道增量
+            mergeLegacyEvaluation(blogId, counts, new long[counts.length], true);
         }
-        // 单独抽离出去加事务，防止耗时的操作占用事务，导致 SQL 连接被耗尽
-        saveBlogEvaluation(readCountMap, commentCountMap, voteCountMap);
+        return migrated || found;
     }
 
     /**
-     * 单独抽离出来添加事务：避免和 耗时的操作混合在一起，导致 SQL 连接被耗尽
+     * KEY:blogId -> KEY:{blogId}：
+     * （1）指标量：旧 hash 可能不完整（只有增量），取走后由 lua/evalmigrate.lua 合并，不直接 RENAME
+     * （2）其余：新 key 不存在时 RENAME；已存在时补齐新 key 中不存在的成员（旧 key 中可能有尚未写入数据库的评论、点赞）
      *
-     * @param readCountMap    阅读量 模块
-     * @param commentCountMap 评论量 模块
-     * @param voteCountMap    点赞量 模块
+     * @param kind   key 前缀
+     * @param blogId blogId
+     * @return true：旧 key 存在，已迁移
      */
-    @Transactional(rollbackFor = Throwable.class)
-    void saveBlogEvaluation(Map<Long, Long> readCountMap, Map<Long, Long> commentCountMap, Map<Long, Long>
-            voteCountMap) {
-        if (readCountMap.size() > 0 || commentCountMap.size() > 0 || voteCountMap.size() > 0) {
-            log.info("readCount:{}  |  commentCount:{}   |   voteCount:{}", readCountMap, commentCountMap,
-                    voteCountMap);
-            blogEvaluationRepository.saveBlogEvaluation(readCountMap, commentCountMap, voteCountMap);
+    @SuppressWarnings("unchecked")
+    private boolean migrateUntaggedKey(String kind, Long blogId) {
+        String untagged = kind + ":" + blogId;
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(untagged))) {
+            return false;
         }
+        String tagged = BlogCacheUtil.generateKey(kind, blogId);
+        if (CacheConstant.EVALUATION.equals(kind)) {
+            List<Long> v = redisTemplate.execute(CLAIM_DELTA_SCRIPT, Collections.singletonList(untagged),
+                    MIGRATE_RUN_ID, System.currentTimeMillis(), flushLeaseMillis);
+            boolean complete = v.get(4) >= 0 && v.get(5) >= 0 && v.get(6) >= 0;
+            mergeLegacyEvaluation(blogId, complete ? new long[]{v.get(4), v.get(5), v.get(6)}
+                    : new long[]{-1L, -1L, -1L}, new long[]{v.get(1), v.get(2), v.get(3)}, v.get(0) == 1L);
+        } else if (Boolean.TRUE.equals(redisTemplate.renameIfAbsent(untagged, tagged))) {
+            return true;
+        } else if (CacheConstant.COMMENT_INDEX.equals(kind)) {
+            Set<ZSetOperations.TypedTuple<Object>> members = redisTemplate.opsForZSet().rangeWithScores(untagged,
+                    0, -1);
+            if (!Objects.isNull(members) && !members.isEmpty()) {
+                redisTemplate.opsForZSet().add(tagged, members);
+            }
+        } else {
+            redisTemplate.opsForHash().entries(untagged).forEach((field, value) ->
+                    redisTemplate.opsForHash().putIfAbsent(tagged, field, value));
+        }
+        redisTemplate.delete(untagged);
+        log.info("【指标量迁移】{} -> {}", untagged, tagged);
+        return true;
+    }
+
+    /**
+     * lua/evalmigrate.lua：旧数据合并到指标量 hash，并记入待刷新集合
+     *
+     * @param counts  旧的 阅读量、评论量、点赞量（-1 表示不存在）
+     * @param deltas  旧数据尚未写入数据库的增量
+     * @param unknown 增量未知：下次刷新时整体覆盖一次
+     */
+    private void mergeLegacyEvaluation(Long blogId, long[] counts, long[] deltas, boolean unknown) {
+        redisTemplate.execute(EVALUATION_MIGRATE_SCRIPT, Collections.singletonList(evaluationKey(blogId)),
+                counts[0], counts[1], counts[2], deltas[0], deltas[1], deltas[2], unknown ? 1 : 0);
+        markDirty(blogId);
     }
 
     /**
@@ -409,29 +1022,83 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      */
     @Override
     public BlogEvaluationCacheDTO getBlogEvaluationByBlogId2Redis(Long blogId) {
-        BlogEvaluationCacheDTO blogEvaluation = new BlogEvaluationCacheDTO();
-        Object readCountObj = redisTemplate.opsForHash().get(CacheConstant.READING_COUNT, blogId);
-        Object commentCountObj = redisTemplate.opsForHash().get(CacheConstant.COMMENT_COUNT, blogId);
-        Object voteCountObj = redisTemplate.opsForHash().get(CacheConstant.VOTE_COUNT, blogId);
-        if (Objects.isNull(readCountObj) || Objects.isNull(commentCountObj) || Objects.isNull(voteCountObj)) {
-            log.info("【缓存】blog:{} 无缓存", blogId);
+        return evaluateByScript(blogId, 0L);
+    }
+
+    /**
+     * lua/evaluation.lua：一次往返完成 空数据检测、读取 阅读量/评论量/点赞量，以及（可选的）阅读量自增
+     *
+     * @param blogId       blogId
+     * @param readingDelta 阅读量增量：0 表示只读取
+     * @return 指标量（只包含 阅读量、评论量、点赞量），无缓存时返回 null
+     * @throws NullBlogException 空数据
+     */
+    private BlogEvaluationCacheDTO evaluateByScript(Long blogId, long readingDelta) {
+        List<?> result = redisTemplate.execute(EVALUATION_SCRIPT, Arrays.asList(nullKey(blogId),
+                evaluationKey(blogId)), readingDelta, TimeUnit.SECONDS.toMillis(CacheConstant.EXPIRE));
+        if (Objects.isNull(result) || result.size() < 4) {
+            log.error("【缓存】blog:{} 指标量脚本返回异常", blogId);
             return null;
         }
-        try {
-            /*
-            从 redis 中获取的数据，需要经过 JSONObject 转换
-            否则报错：com.alibaba.fastjson.JSONObject cannot be cast to com.study.blog.dto.BlogEvaluationCacheDTO
-             */
-            blogEvaluation.setReadingCount(JSONObject.parseObject(readCountObj.toString(), Integer.class));
-            blogEvaluation.setCommentCount(JSONObject.parseObject(commentCountObj.toString(), Integer.class));
-            blogEvaluation.setVoteCount(JSONObject.parseObject(voteCountObj.toString(), Integer.class));
-        } catch (Exception e) {
-            log.error("【缓存】blog:{} Json 转换异常", blogId, e.getMessage());
+        long status = ((Number) result.get(0)).longValue();
+        if (status == EVALUATION_NULL) {
+            throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
+        }
+        if (status != EVALUATION_HIT) {
             return null;
         }
+        if (readingDelta != 0) {
+            markDirty(blogId);
+        }
+        BlogEvaluationCacheDTO blogEvaluation = new BlogEvaluationCacheDTO();
+        blogEvaluation.setBlogId(blogId);
+        blogEvaluation.setReadingCount(((Number) result.get(1)).intValue());
+        blogEvaluation.setCommentCount(((Number) result.get(2)).intValue());
+        blogEvaluation.setVoteCount(((Number) result.get(3)).intValue());
         return blogEvaluation;
     }
 
+    /**
+     * 指标量自增：HINCRBY，成功之后将 blogId 记入待刷新集合
+     *
+     * @param blogId blogId
+     * @param field  READ / COMMENT / VOTE
+     * @param delta  增量
+     * @return 自增后的值，指标量不存在时返回 null（不自增）
+     */
+    private Long incrementEvaluation(Long blogId, int field, long delta) {
+        Long count = redisTemplate.execute(EVALUATION_INCR_SCRIPT, Collections.singletonList(evaluationKey(blogId)),
+                field, delta);
+        if (!Objects.isNull(count)) {
+            markDirty(blogId);
+        }
+        return count;
+    }
+
+    /**
+     * 记入待刷新集合：全局集合与博客的 key 不在同一个 slot，不在每个博客的 lua 脚本中访问，而是在脚本成功之后单独 SADD
+     * 两者之间失败时增量仍保留在指标量 hash 中，该博客下次变化时一起写入数据库
+     */
+    private void markDirty(Long blogId) {
+        redisTemplate.opsForSet().add(CacheConstant.EVALUATION_DIRTY, blogId);
+    }
+
+    /**
+     * 记入待刷新集合 与 待持久化集合（同 markDirty）：持久化时写入的是 Redis 中的当前状态，重复记录不影响结果
+     */
+    private void markPending(Long blogId, String pendingKey, String member) {
+        markDirty(blogId);
+        redisTemplate.opsForSet().add(pendingKey, member);
+    }
+
+    private String evaluationKey(Long blogId) {
+        return BlogCacheUtil.generateKey(CacheConstant.EVALUATION, blogId);
+    }
+
+    private String nullKey(Long blogId) {
+        return BlogCacheUtil.generateKey(CacheConstant.BLOG_ABSENT, blogId);
+    }
+
     /**
      * 将 数据 保存到 redis 中 ： 新建：点赞、评论
      *
@@ -440,87 +1107,294 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      */
     @Override
     public void saveBlogEvaluation2Redis(Long blogId, BlogEvaluationCacheDTO blogEvaluation) {
-        redisTemplate.opsForHash().put(CacheConstant.READING_COUNT, blogId, blogEvaluation.getReadingCount());
-        redisTemplate.opsForHash().put(CacheConstant.COMMENT_COUNT, blogId, blogEvaluation.getCommentCount());
-        redisTemplate.opsForHash().put(CacheConstant.VOTE_COUNT, blogId, blogEvaluation.getVoteCount());
+        redisTemplate.execute(EVALUATION_PUT_SCRIPT, Collections.singletonList(evaluationKey(blogId)),
+                blogEvaluation.getReadingCount(), blogEvaluation.getCommentCount(), blogEvaluation.getVoteCount());
         blogEvaluation.getComments().forEach(comment -> {
             String commentKey = BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId);
             redisTemplate.opsForHash().put(commentKey, comment.getId(), comment);
         });
+        saveCommentIndex(blogId, blogEvaluation.getComments());
         blogEvaluation.getVotes().forEach(vote -> {
             String voteKey = BlogCacheUtil.generateKey(CacheConstant.VOTE, blogId);
             log.info("【VOTE】voteKey:{},voteId:{}", voteKey, vote.getId());
             redisTemplate.opsForHash().put(voteKey, vote.getId(), vote);
         });
+        saveVotersIfAbsent(blogId, blogEvaluation.getVotes());
     }
 
     /**
-     * 新增 评论 =》评论量
+     * 新增 评论 =》评论量：commentId 由 IDService 分配，comment 表由 saveComments2Mysql 异步写入
      *
      * @param comment comment
      */
     @Override
     public Long addBlogComment(Comment comment) {
-        Long blogId = comment.getBlogId();
-
-        // 插入到 mysql 中获取 commentId
-        blogEvaluationRepository.insertComment(comment);
-        // 直接 put 到 redis ：不会涉及到旧的状态，没有并发问题！
-        String commentKey = BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId);
-        redisTemplate.opsForHash().put(commentKey, comment.getId(), comment);
-        // 评论量+1：redis单线程操作，不会出现并发问题！
-        return redisTemplate.opsForHash().increment(CacheConstant.COMMENT_COUNT, blogId, 1L);
+        comment.setId(idService.nextId(CacheConstant.COMMENT_ID));
+        comment.setCreateTime(new Date());
+        return changeComment(comment.getBlogId(), comment.getId(), comment, 1);
     }
 
     /**
-     * 删除 评论 =》评论量
+     * 删除 评论 =》评论量：评论不存在时不重复删除
      *
      * @param blogId    blogId
      * @param commentId commentId
      */
     @Override
     public Long deleteBlogComment(Long blogId, Long commentId) {
-        // redis 删除评论！
-        String commentKey = BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId);
-        redisTemplate.opsForHash().delete(commentKey, commentId);
-        // 删除 mysql 中的记录
-        blogEvaluationRepository.deleteCommentByCommentId(commentId);
-        // 评论量 -1
-        return redisTemplate.opsForHash().increment(CacheConstant.COMMENT_COUNT, blogId, -1L);
+        return changeComment(blogId, commentId, null, -1);
+    }
+
+    /**
+     * 执行 comment.lua：指标量尚未加载时从数据库加载，评论索引尚未建立时由评论 hash 建立，之后重试
+     *
+     * @param op 1 新增 / -1 删除
+     * @return 评论量
+     */
+    @SuppressWarnings("unchecked")
+    private Long changeComment(Long blogId, Long commentId, Comment comment, int op) {
+        if (Objects.isNull(blogId) || Objects.isNull(commentId)) {
+            throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
+        }
+        List<String> keys = Arrays.asList(nullKey(blogId), BlogCacheUtil.generateKey(CacheConstant.COMMENT,
+                blogId), evaluationKey(blogId), commentIndexKey(blogId));
+        for (int attempt = 0; attempt < LOAD_ATTEMPTS; attempt++) {
+            List<Long> result = redisTemplate.execute(COMMENT_SCRIPT, keys, commentId,
+                    Objects.isNull(comment) ? "" : comment, op, Objects.isNull(comment) ? 0L : commentScore(comment));
+            long status = result.get(0);
+            if (status == NULL_BLOG) {
+                throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
+            }
+            if (status == COMMENT_INDEX_ABSENT) {
+                rebuildCommentIndex(blogId);
+            } else if (status == EVALUATION_ABSENT) {
+                getBlogEvaluationFromMysql(blogId);
+            } else {
+                if (status == CHANGED) {
+                    markPending(blogId, CacheConstant.COMMENT_PENDING, blogId + PENDING_SEPARATOR + commentId);
+                }
+                return result.get(1);
+            }
+        }
+        throw new LimitFlowException(blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
     }
 
     /**
-     * 新增 点赞 =》点赞量
+     * 新增 点赞 =》点赞量：vote.lua 一次完成 重复检测、分配 voteId、记录点赞、点赞量+1，vote 表由 saveVotes2Mysql 异步写入
      *
      * @param vote vote
      */
     @Override
     public Long voteBlog(Vote vote) {
-        Long blogId = vote.getBlogId();
-        // 获取 voteId
-        blogEvaluationRepository.insertVote(vote);
-        // redis 新增vote
-        String voteKey = BlogCacheUtil.generateKey(CacheConstant.VOTE, blogId);
-        redisTemplate.opsForHash().put(voteKey, vote.getId(), vote);
-        // 修改 voteCount 并返回
-        return redisTemplate.opsForHash().increment(CacheConstant.VOTE_COUNT, blogId, 1L);
+        List<Long> result = toggleVote(vote.getBlogId(), vote.getUserId(), 1);
+        vote.setId(result.get(1));
+        return result.get(2);
     }
 
     /**
-     * 取消 点赞 =》点赞量
+     * 取消 点赞 =》点赞量：未点赞时不重复取消
      *
      * @param blogId blogId
      * @param voteId voteId
+     * @param userId 点赞者 id
      */
     @Override
-    public Long cancelVotedBlog(Long blogId, Long voteId) {
-        // 删除 redis 中的 vote 记录
-        String voteKey = BlogCacheUtil.generateKey(CacheConstant.VOTE, blogId);
-        redisTemplate.opsForHash().delete(voteKey, voteId);
-        // 删除 mysql 中的记录
-        blogEvaluationRepository.deleteVoteByVoteId(voteId);
-        // 点赞量更新 -1
-        return redisTemplate.opsForHash().increment(CacheConstant.VOTE_COUNT, blogId, -1L);
+    public Long cancelVotedBlog(Long blogId, Long voteId, Integer userId) {
+        return toggleVote(blogId, userId, -1).get(2);
+    }
+
+    /**
+     * 执行 vote.lua：点赞者 hash 或 指标量 尚未加载时，从数据库加载后重试
+     *
+     * @param op 1 点赞 / -1 取消点赞
+     * @return {状态, voteId, 点赞量}
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> toggleVote(Long blogId, Integer userId, int op) {
+        if (Objects.isNull(blogId) || Objects.isNull(userId)) {
+            throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
+        }
+        List<String> keys = Arrays.asList(nullKey(blogId), voterKey(blogId), evaluationKey(blogId),
+                BlogCacheUtil.generateKey(CacheConstant.VOTE, blogId));
+        // voteId 在脚本之外分配：号段用完之前不访问 Redis；重复点赞时该 id 被丢弃
+        Long voteId = op > 0 ? idService.nextId(CacheConstant.VOTE_ID) : 0L;
+        for (int attempt = 0; attempt < LOAD_ATTEMPTS; attempt++) {
+            List<Long> result = redisTemplate.execute(VOTE_SCRIPT, keys, userId, blogId, op, voteId);
+            long status = result.get(0);
+            if (status == NULL_BLOG) {
+                throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
+            }
+            if (status == VOTE_VOTER_ABSENT) {
+                loadVoters(blogId);
+            } else if (status == EVALUATION_ABSENT) {
+                getBlogEvaluationFromMysql(blogId);
+            } else {
+                if (status == CHANGED) {
+                    markPending(blogId, CacheConstant.VOTE_PENDING, blogId + PENDING_SEPARATOR + userId);
+                }
+                return result;
+            }
+        }
+        throw new LimitFlowException(blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+    }
+
+    /**
+     * 将 Redis 中的点赞状态写入数据库：查询点赞者 hash 中的当前状态，已点赞写入 voteId，未点赞删除
+     * 同一个 pipeline 中查询已加载标记：点赞者 hash 不存在（被淘汰、被迁移重置）时不知道当前状态，
+     * 丢弃该成员而不是当作已取消点赞删除数据库中的点赞（点赞者 hash 重新加载时以数据库为准）
+     */
+    @Override
+    public void saveVotes2Mysql() {
+        drainPending(CacheConstant.VOTE_PENDING, members -> {
+            List<Vote> votes = new ArrayList<>(members.size());
+            members.forEach(member -> votes.add(new Vote(Long.valueOf(member[0]), Integer.valueOf(member[1]))));
+            byte[] loaded = rawHashKey(VOTER_LOADED);
+            List<Object> states = pipelined(votes.size(), (connection, i) -> {
+                byte[] voterKey = rawKey(voterKey(votes.get(i).getBlogId()));
+                connection.hGet(voterKey, rawHashKey(votes.get(i).getUserId()));
+                connection.hExists(voterKey, loaded);
+            });
+            List<Vote> known = new ArrayList<>(votes.size());
+            for (int i = 0; i < votes.size(); i++) {
+                Object voteId = states.get(i << 1);
+                if (!Boolean.TRUE.equals(states.get((i << 1) + 1))) {
+                    log.info("【点赞写入】blog:{} 点赞者未加载，丢弃 user:{}", votes.get(i).getBlogId(),
+                            votes.get(i).getUserId());
+                    continue;
+                }
+                votes.get(i).setId(voteId instanceof Number ? ((Number) voteId).longValue() : null);
+                known.add(votes.get(i));
+            }
+            return blogEvaluationBatchWriter.persistVotes(known).stream()
+                    .map(vote -> vote.getBlogId() + PENDING_SEPARATOR + vote.getUserId()).collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * 将 Redis 中的评论写入数据库：查询评论 hash 中的当前状态，存在时写入，已删除时删除
+     * 同一个 pipeline 中查询评论 hash 是否存在 与 评论量：评论不存在时，只有评论 hash 存在（该评论已被删除），
+     * 或 评论量为 0（删除了最后一条评论，hash 随之消失）时才删除；
+     * 评论 hash 丢失（被淘汰、被迁移重置）时不知道当前状态，丢弃该成员而不是删除数据库中的评论
+     */
+    @Override
+    public void saveComments2Mysql() {
+        drainPending(CacheConstant.COMMENT_PENDING, members -> {
+            List<Long> blogIds = new ArrayList<>(members.size());
+            List<Long> commentIds = new ArrayList<>(members.size());
+            members.forEach(member -> {
+                blogIds.add(Long.valueOf(member[0]));
+                commentIds.add(Long.valueOf(member[1]));
+            });
+            // 指标量 hash 的 field 由 lua 脚本写入，不经过序列化
+            byte[] commentCountField = "comment".getBytes(StandardCharsets.UTF_8);
+            List<Object> states = pipelined(members.size(), (connection, i) -> {
+                byte[] commentKey = rawKey(BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogIds.get(i)));
+                connection.hGet(commentKey, rawHashKey(commentIds.get(i)));
+                connection.exists(commentKey);
+                connection.hGet(rawKey(evaluationKey(blogIds.get(i))), commentCountField);
+            });
+            List<Comment> comments = new ArrayList<>(members.size());
+            for (int i = 0; i < members.size(); i++) {
+                Object body = states.get(i * 3);
+                Object commentCount = states.get(i * 3 + 2);
+                boolean deleted = Objects.isNull(body) && (Boolean.TRUE.equals(states.get(i * 3 + 1))
+                        || (commentCount instanceof Number && ((Number) commentCount).longValue() == 0));
+                if (Objects.isNull(body) && !deleted) {
+                    log.info("【评论写入】blog:{} 评论未加载，丢弃 comment:{}", blogIds.get(i), commentIds.get(i));
+                    continue;
+                }
+                Comment comment = deleted ? new Comment() : JSONObject.parseObject(body.toString(), Comment.class);
+                comment.setId(commentIds.get(i));
+                comment.setBlogId(blogIds.get(i));
+                comments.add(comment);
+            }
+            return blogEvaluationBatchWriter.persistComments(comments).stream()
+                    .map(comment -> comment.getBlogId() + PENDING_SEPARATOR + comment.getId())
+                    .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * 将待持久化集合写入数据库（与 saveBlogEvaluation2Mysql 相同，成员在写入数据库之后才删除）：
+     * 1. 接管已崩溃的写入，之后本次写入以 runId 登记到 pendingKey_RUNS（runId -> 开始时间），
+     * 写入中集合为 pendingKey_FLUSHING:runId
+     * 2. SRANDMEMBER 取 SCAN_COUNT 个 blogId:id，记入写入中集合，再从待持久化集合移除（之后的变化重新记入待持久化集合）
+     * 3. writer 按 Redis 中的当前状态写入数据库，返回写入失败的成员：加回待持久化集合，下次重试
+     * 4. 从写入中集合移除，全部完成后删除写入中集合，注销 runId
+     * <p>
+     * 写入中途崩溃时，超过租期之后写入中集合重新记入待持久化集合；
+     * 写入的是当前状态，因此 重复写入、乱序写入 都不影响最终结果
+     *
+     * @param pendingKey 待持久化集合
+     * @param writer     成员（按 : 拆分）-> 写入失败的成员
+     */
+    private void drainPending(String pendingKey, Function<List<String[]>, List<String>> writer) {
+        String runsKey = pendingKey + PENDING_RUNS_SUFFIX;
+        recoverPendingRuns(pendingKey, runsKey);
+
+        String runId = UUID.randomUUID().toString();
+        String flushingKey = pendingFlushingKey(pendingKey, runId);
+        redisTemplate.opsForHash().put(runsKey, runId, System.currentTimeMillis());
+        // 异常时保留登记：超过租期之后由之后的写入接管
+        Set<Object> members;
+        while (!(members = redisTemplate.opsForSet().distinctRandomMembers(pendingKey, SCAN_COUNT)).isEmpty()) {
+            Object[] claimed = members.toArray();
+            redisTemplate.opsForSet().add(flushingKey, claimed);
+            redisTemplate.opsForSet().remove(pendingKey, claimed);
+            List<String[]> ids = members.stream().map(member -> member.toString().split(PENDING_SEPARATOR))
+                    .collect(Collectors.toList());
+            List<String> failed = writer.apply(ids);
+            if (!failed.isEmpty()) {
+                redisTemplate.opsForSet().add(pendingKey, failed.toArray());
+            }
+            redisTemplate.opsForSet().remove(flushingKey, claimed);
+            if (!failed.isEmpty() || members.size() < SCAN_COUNT) {
+                break;
+            }
+        }
+        redisTemplate.delete(flushingKey);
+        redisTemplate.opsForHash().delete(runsKey, runId);
+    }
+
+    /**
+     * 接管已崩溃的写入：开始时间超过租期的 runId，其写入中集合重新记入待持久化集合
+     */
+    private void recoverPendingRuns(String pendingKey, String runsKey) {
+        long now = System.currentTimeMillis();
+        redisTemplate.opsForHash().entries(runsKey).forEach((runId, startMillis) -> {
+            if (now - ((Number) startMillis).longValue() < flushLeaseMillis) {
+                return;
+            }
+            int recovered = requeue(pendingFlushingKey(pendingKey, runId.toString()), pendingKey);
+            redisTemplate.opsForHash().delete(runsKey, runId);
+            log.error("【{}】{} 超过租期仍未完成，{} 条重新记入待持久化集合", pendingKey, runId, recovered);
+        });
+    }
+
+    private String pendingFlushingKey(String pendingKey, String runId) {
+        return pendingKey + PENDING_FLUSHING_SUFFIX + runId;
+    }
+
+    /**
+     * pipeline：对第 0 ~ size-1 个元素依次执行 commands，返回所有命令的结果（按执行顺序）
+     */
+    private List<Object> pipelined(int size, BiConsumer<RedisConnection, Integer> commands) {
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < size; i++) {
+                commands.accept(connection, i);
+            }
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashKey(Object hashKey) {
+        return ((RedisSerializer<Object>) redisTemplate.getHashKeySerializer()).serialize(hashKey);
     }
 
     /**
@@ -531,15 +1405,71 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
      */
     @Override
     public Long incrementBlogReading(Long blogId) {
-        // 首先：空数据判断
-        judgeBlogInfoNull(blogId);
+        if (Objects.isNull(blogId)) {
+            throw new NullBlogException(ValidateConstant.NULL_BLOG_INFO);
+        }
+        // 空数据判断 + 缓存存在时 阅读量+1：一次往返
+        BlogEvaluationCacheDTO blogEvaluation = evaluateByScript(blogId, 1L);
+        if (!Objects.isNull(blogEvaluation)) {
+            return (long) blogEvaluation.getReadingCount();
+        }
+        // 缓存不存在：从数据库刷新到 缓存(如果查询结果为 null，会抛出异常)
+        getBlogEvaluationFromMysql(blogId);
+        Long readingCount = incrementEvaluation(blogId, READ, 1L);
+        if (Objects.isNull(readingCount)) {
+            throw new LimitFlowException(blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
+        }
+        return readingCount;
+    }
 
-        // 判断键值是否存在
-        if (!redisTemplate.opsForHash().hasKey(CacheConstant.READING_COUNT, blogId)) {
-            // 从数据库刷新到 缓存(如果查询结果为 null，会抛出异常)
-            getBlogEvaluationFromMysql(blogId);
+    /**
+     * 批量累加 阅读量：每个博客执行一次 lua/evaluation.lua（EVALSHA，见 evalShaPipelined），通过 pipeline 一次往返
+     * （1）命中：直接累加
+     * （2）空数据：丢弃该博客的阅读量
+     * （3）缓存不存在：从数据库刷新到缓存后累加；系统正忙、加载被拒绝时不累加，返回 READING_DEFERRED，
+     * 由调用者保留增量稍后重试（不能在指标量不存在时直接累加：只有增量的 hash 会被当作阅读量）
+     *
+     * @param readingDeltas blogId - 阅读量增量
+     * @return blogId - 累加后的阅读量 或 READING_DEFERRED（不包括被丢弃的博客）
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, Long> incrementBlogReading(Map<Long, Long> readingDeltas) {
+        if (readingDeltas.isEmpty()) {
+            return Collections.emptyMap();
         }
-        return redisTemplate.opsForHash().increment(CacheConstant.READING_COUNT, blogId, 1L);
+        List<Long> blogIds = new ArrayList<>(readingDeltas.keySet());
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        byte[] nullExpire = valueSerializer.serialize(TimeUnit.SECONDS.toMillis(CacheConstant.EXPIRE));
+        List<Object> results = evalShaPipelined(EVALUATION_SCRIPT, blogIds.size(), 2, i -> new byte[][]{
+                rawKey(nullKey(blogIds.get(i))), rawKey(evaluationKey(blogIds.get(i))),
+                valueSerializer.serialize(readingDeltas.get(blogIds.get(i))), nullExpire});
+        Map<Long, Long> readingCounts = new HashMap<>(blogIds.size() << 1);
+        List<Long> hits = new ArrayList<>(blogIds.size());
+        for (int i = 0; i < blogIds.size(); i++) {
+            Long blogId = blogIds.get(i);
+            Long delta = readingDeltas.get(blogId);
+            List<Long> result = (List<Long>) results.get(i);
+            if (result.get(0) == EVALUATION_HIT) {
+                readingCounts.put(blogId, result.get(1));
+                hits.add(blogId);
+            } else if (result.get(0) != EVALUATION_NULL) {
+                try {
+                    getBlogEvaluationFromMysql(blogId);
+                } catch (NullBlogException e) {
+                    continue;
+                } catch (LimitFlowException e) {
+                    log.info("【阅读量】blog:{} 系统正忙，稍后重试", blogId);
+                }
+                Long readingCount = incrementEvaluation(blogId, READ, delta);
+                readingCounts.put(blogId, Objects.isNull(readingCount) ? READING_DEFERRED : readingCount);
+            }
+        }
+        // 命中的博客一次 SADD 记入待刷新集合（未命中的由 incrementEvaluation 记录）
+        if (!hits.isEmpty()) {
+            redisTemplate.opsForSet().add(CacheConstant.EVALUATION_DIRTY, hits.toArray());
+        }
+        return readingCounts;
     }
 
     /**
@@ -552,12 +1482,13 @@ public class BlogEvaluationCacheServiceImpl implements BlogEvaluationCacheServic
         // 首先：判断是否空数据
         judgeBlogInfoNull(blogId);
 
-        redisTemplate.opsForHash().delete(CacheConstant.READING_COUNT, blogId);
-        redisTemplate.opsForHash().delete(CacheConstant.COMMENT_COUNT, blogId);
-        redisTemplate.opsForHash().delete(CacheConstant.VOTE_COUNT, blogId);
+        if (!legacyMigrated) {
+            // 旧数据尚未迁移完毕：先迁移该博客，再一起删除，避免之后被迁移回来
+            migrateLegacyEvaluation(blogId);
+        }
         String commentKey = BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId);
         String voteKey = BlogCacheUtil.generateKey(CacheConstant.VOTE, blogId);
-        redisTemplate.delete(commentKey);
-        redisTemplate.delete(voteKey);
+        redisTemplate.delete(Arrays.asList(evaluationKey(blogId), commentKey, commentIndexKey(blogId), voteKey,
+                voterKey(blogId)));
     }
 }
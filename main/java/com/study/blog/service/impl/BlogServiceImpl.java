@@ -2,25 +2,29 @@ package com.study.blog.service.impl;
 
 import com.github.pagehelper.Page;
 import com.study.blog.constant.CacheConstant;
-import com.study.blog.constant.ConcurrentConstant;
 import com.study.blog.constant.ValidateConstant;
 import com.study.blog.dto.BlogEvaluationCacheDTO;
 import com.study.blog.entity.Blog;
-import com.study.blog.entity.EsBlog;
 import com.study.blog.entity.User;
-import com.study.blog.exception.LimitFlowException;
 import com.study.blog.exception.NullBlogException;
-import com.study.blog.lock.LimitFlowLock2Park;
-import com.study.blog.lock.LimitFlowLock2Wait;
+import com.study.blog.lock.LimitFlowDomain;
+import com.study.blog.lock.LimitFlowLock2Future;
+import com.study.blog.lock.LimitFlowLockRegistry;
+import com.study.blog.lock.RedisSingleFlight;
 import com.study.blog.repository.BlogRepository;
-import com.study.blog.repository.es2search.EsBlogRepository;
+import com.study.blog.repository.EsOutboxRepository;
 import com.study.blog.service.BlogCacheService;
 import com.study.blog.service.BlogEvaluationCacheService;
 import com.study.blog.service.BlogService;
+import com.study.blog.util.BlogCacheUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Objects;
@@ -33,38 +37,39 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class BlogServiceImpl implements BlogService {
     private final BlogRepository blogRepository;
-    private final EsBlogRepository esBlogRepository;
+    private final EsOutboxRepository esOutboxRepository;
     private final BlogEvaluationCacheService cacheService;
     private final RedisTemplate<String, Object> redisTemplate;
     private final BlogCacheService blogCacheService;
-    private final LimitFlowLock2Wait limitFlowLock2Wait;
-    private LimitFlowLock2Park limitFlowLock2Park;
+    private final RedisSingleFlight redisSingleFlight;
+    private final LimitFlowLock2Future limitFlowLock2Future;
+    private final ReadingCountBuffer readingCountBuffer;
+    /**
+     * 是否开启集群单飞：多节点部署时，整个集群中只有一个节点访问数据库，刷新博客缓存
+     */
+    @Value("${limit-flow.cluster.enabled:false}")
+    private boolean clusterSingleFlight;
 
     @Autowired
     public BlogServiceImpl(BlogRepository blogRepository,
-                           EsBlogRepository esBlogRepository,
+                           EsOutboxRepository esOutboxRepository,
                            BlogEvaluationCacheService cacheService,
                            RedisTemplate<String, Object> redisTemplate,
-                           BlogCacheService blogCacheService) {
+                           BlogCacheService blogCacheService,
+                           RedisSingleFlight redisSingleFlight,
+                           LimitFlowLockRegistry limitFlowLockRegistry,
+                           ReadingCountBuffer readingCountBuffer,
+                           EsCounterSyncQueue esCounterSyncQueue) {
         this.blogRepository = blogRepository;
-        this.esBlogRepository = esBlogRepository;
+        this.esOutboxRepository = esOutboxRepository;
         this.cacheService = cacheService;
         this.redisTemplate = redisTemplate;
         this.blogCacheService = blogCacheService;
-        this.limitFlowLock2Park = getLimitFlowLock2Park();
-        this.limitFlowLock2Wait = getLimitFlowLock2Wait();
-    }
-
-    private LimitFlowLock2Wait getLimitFlowLock2Wait() {
-        LimitFlowLock2Wait limitFlowLock2Wait = new LimitFlowLock2Wait();
-        log.info("【Lock_EVALUATION】:{}", limitFlowLock2Wait);
-        return limitFlowLock2Wait;
-    }
-
-    private LimitFlowLock2Park getLimitFlowLock2Park() {
-        LimitFlowLock2Park limitFlowLock2Park = new LimitFlowLock2Park();
-        log.info("【Lock_BLOG】:{}", limitFlowLock2Park);
-        return limitFlowLock2Park;
+        this.redisSingleFlight = redisSingleFlight;
+        this.limitFlowLock2Future = limitFlowLockRegistry.lock(LimitFlowDomain.BLOG);
+        this.readingCountBuffer = readingCountBuffer;
+        // 阅读量批量写入 Redis 之后，再异步同步到 ES
+        readingCountBuffer.addListener(esCounterSyncQueue::offerReadCount);
     }
 
     // @Override
@@ -84,25 +89,10 @@ public class BlogServiceImpl implements BlogService {
         Blog blog;
         // 尝试从缓存中获取博客，如果是空数据，则会抛出异常！
         if (Objects.isNull(blog = judgeBlogNull(blogId))) {
-            // 限流
-            if (limitFlowLock2Wait.limitRequestPass(blogId, () -> Objects.isNull(judgeBlogNull(blogId)), false)) {
-                try {
-                    blog = flushCacheByMySQL(blogId);
-                } finally {
-                    // 保证获取许可证的线程 释放许可证！
-                    // 保证许可证被释放！
-                    // limitFlowLock2Park.releaseLock(blogId);
-                    limitFlowLock2Wait.releaseLock(blogId);
-                }
-            } else {
-                // 这部分线程是被限流被唤醒的!
-                // 尝试从缓存中获取博客，如果是空数据，则会抛出异常，不再继续往下执行！
-                blog = judgeBlogNull(blogId);
-                if (Objects.isNull(blog)) {
-                    // 如果被阻塞后还是为 null，说明现在请求资源的线程数太多了，返回系统正忙！
-                    throw new LimitFlowException("Blog:" + blogId + " " + ConcurrentConstant.SYSTEM_BUSY_MSG);
-                }
-            }
+            // 限流：只有一个线程访问数据库，其余线程被阻塞，苏醒后直接取走该线程加载的 blog（不再查询缓存）
+            // 如果是空数据，所有线程都会抛出 NullBlogException；如果等待超时，则抛出 LimitFlowException（系统正忙）
+            // 所有线程取走的是同一个 blog：各自复制一份，之后写入指标量不会互相干扰
+            blog = limitFlowLock2Future.load(blogId, () -> judgeBlogNull(blogId), () -> flushCache(blogId)).copy();
         }
         // 使用 缓存中的指标量展示博客
         blogCacheEvaluation(blog);
@@ -111,66 +101,71 @@ public class BlogServiceImpl implements BlogService {
 
     /**
      * 检查是否是空数据，如果是，则直接抛出异常，如果不是，则继续执行
+     * <p>
+     * 空数据检测、查询缓存、续期 由 blogCacheService 一次完成
      *
      * @param blogId blogId
      */
     private Blog judgeBlogNull(Long blogId) {
-        Boolean judge = redisTemplate.hasKey(blogId.toString());
-        // 检查是否是 空 数据！
-        if (!Objects.isNull(judge) && judge) {
-            redisTemplate.expire(blogId.toString(), CacheConstant.EXPIRE, TimeUnit.SECONDS);
-            // 说明 该blog 不存在！
-            throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
-        }
-        // 尝试从缓存中查询
         return blogCacheService.getBlogFromCacheById(blogId);
     }
 
     /**
-     * 从 数据库 中刷新数据到 缓存
+     * 刷新缓存
+     * 1. 单节点：本节点持有锁的线程直接访问数据库
+     * 2. 集群单飞：各节点持有锁的线程再竞争分布式锁，整个集群中只有一个节点访问数据库，其余节点等待解锁通知后查询缓存
      *
      * @param blogId blogId
      * @return blog
      */
-    private Blog flushCacheByMySQL(Long blogId) {
-        // 从 数据库中获取
-        Blog blog;
-        try {
-            blog = blogRepository.getBlogById(blogId);
-        } finally {
-            // 首先释放许可证：提高系统吞吐量！
-            // 保证许可证被释放！
-            // limitFlowLock2Park.releasePermission();
-            limitFlowLock2Wait.releasePermission();
+    private Blog flushCache(Long blogId) {
+        if (!clusterSingleFlight) {
+            return flushCacheByMySQL(blogId, null);
         }
+        String key = BlogCacheUtil.generateKey(CacheConstant.BLOG, blogId);
+        return redisSingleFlight.load(key, () -> judgeBlogNull(blogId), token -> flushCacheByMySQL(blogId, token));
+    }
+
+    /**
+     * 从 数据库 中刷新数据到 缓存
+     *
+     * @param blogId       blogId
+     * @param fencingToken 集群单飞的 fencing token：为 null 时直接写入缓存
+     * @return blog
+     */
+    private Blog flushCacheByMySQL(Long blogId, Long fencingToken) {
+        // 从 数据库中获取：访问完数据库之后立即释放许可证，提高系统吞吐量！
+        Blog blog = limitFlowLock2Future.withPermission(blogId, () -> blogRepository.getBlogById(blogId));
         if (Objects.isNull(blog)) {
             // 说明数据库中也不存在，防止 缓存穿透 处理
             log.error("【获取 博客】blogId 为 {} 的 blog 不存在！", blogId);
-            redisTemplate.opsForValue().set(String.valueOf(blogId), CacheConstant.NULL, CacheConstant.EXPIRE,
-                    TimeUnit.SECONDS);
+            redisTemplate.opsForValue().set(BlogCacheUtil.generateKey(CacheConstant.BLOG_ABSENT, blogId),
+                    CacheConstant.NULL, CacheConstant.EXPIRE, TimeUnit.SECONDS);
             throw new NullBlogException("Blog：" + blogId + " " + ValidateConstant.NULL_BLOG_INFO);
         }
         // 使缓存生效
-        blogCacheService.putBlogCache(blog);
+        if (Objects.isNull(fencingToken)) {
+            blogCacheService.putBlogCache(blog);
+        } else {
+            blogCacheService.putBlogCache(blog, fencingToken);
+        }
         return blog;
     }
 
     /**
-     * 保存博客
+     * 保存博客：同一个事务中写入 es_outbox，由 EsOutboxDispatcher 异步同步到 ES
      *
      * @param blog 博客
      * @return blog
      */
     @Override
+    @Transactional(rollbackFor = Throwable.class)
     public Blog saveBlog(Blog blog, User user) {
         // 必须先新增到关系型数据库中，使得博客id回传
         blogRepository.saveBlog(blog);
         log.info("【保存博客】{}", blog.getBlogId());
         blog.setCreateTime(blogRepository.getCreateTime(blog.getBlogId()));
-        EsBlog esBlog = new EsBlog(blog, user);
-        // 保存到关系性数据库的同时保存到ES中
-        esBlogRepository.save(esBlog);
-        log.info("【保存博客】 到 ES");
+        esOutboxRepository.saveOutbox(blog.getBlogId());
         return blog;
     }
 
@@ -182,14 +177,18 @@ public class BlogServiceImpl implements BlogService {
      * @return 博客
      */
     @Override
+    @Transactional(rollbackFor = Throwable.class)
     public Blog updateBlog(Blog blog, User user) {
         // 先删除缓存，再更新数据库
         blogCacheService.removeBlogFromCacheById(blog.getBlogId());
         blogRepository.updateBlog(blog);
+        // 事务提交之后再删除一次：清除提交之前被其他请求以旧数据回填的 Redis 缓存 与 各节点的本地缓存
+        Long blogId = blog.getBlogId();
+        afterCommit(() -> blogCacheService.removeBlogFromCacheById(blogId));
         // todo
         blog.setCreateTime(blogRepository.getCreateTime(blog.getBlogId()));
-        // 更新 ES
-        updateEsBlog(blog, user);
+        // 同一个事务中写入 es_outbox，由 EsOutboxDispatcher 异步同步到 ES
+        esOutboxRepository.saveOutbox(blog.getBlogId());
         return blog;
     }
 
@@ -199,84 +198,52 @@ public class BlogServiceImpl implements BlogService {
      * @param blogId blog id
      */
     @Override
+    @Transactional(rollbackFor = Throwable.class)
     public void removeBlog(Long blogId) {
         // 删除博客缓存
         blogCacheService.removeBlogFromCacheById(blogId);
-        // 删除博客相关指标量
-        cacheService.deleteBlogEvaluation(blogId);
         // 数据库删除缓存
         blogRepository.removeBlog(blogId);
-        // 删除 ES 中的博客记录
-        EsBlog esBlog = esBlogRepository.findByBlogId(blogId);
-        esBlogRepository.deleteById(esBlog.getId());
+        // 同一个事务中写入 es_outbox，由 EsOutboxDispatcher 异步删除 ES 中的博客记录
+        esOutboxRepository.saveOutbox(blogId);
+        // 事务提交之后：删除博客缓存 与 博客相关指标量，提交之前被其他请求回填的缓存一并清除
+        afterCommit(() -> {
+            blogCacheService.removeBlogFromCacheById(blogId);
+            cacheService.deleteBlogEvaluation(blogId);
+        });
     }
 
     /**
-     * 阅读量+1
-     *
-     * @param id 博客id
+     * 事务提交之后执行：提交之前其他请求仍从数据库读到旧数据并回填缓存，只有提交之后的删除才能清除
+     * 没有事务时立即执行
      */
-    @Override
-    public void readingIncrement(Long id) {
-        // blogRepository.readingIncrement(id);
-        Long count = cacheService.incrementBlogReading(id);
-        count = Objects.isNull(count) ? 0L : count;
-        Integer readCount = Math.toIntExact(count);
-        updateEsBlog(id, readCount);
-    }
-
-    /**
-     * 更新 ES Blog
-     *
-     * @param blog 博客
-     * @param user 博主
-     */
-    private void updateEsBlog(Blog blog, User user) {
-        EsBlog esBlog = null;
-        try {
-            esBlog = esBlogRepository.findByBlogId(blog.getBlogId());
-        } catch (Exception e) {
-            log.error("【ES】查询异常：{}", e.getMessage());
-            // todo 抛出异常
-            return;
-        }
-        if (esBlog == null) {
-            // log.error("【ES】不存在 Blog:{}", blog.getBlogId());
-            // todo 抛出异常
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
             return;
         }
-        esBlog.update(blog, user);
-        esBlogRepository.save(esBlog);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.error("【缓存】事务提交之后删除缓存失败：{}", e.getMessage());
+                }
+            }
+        });
     }
 
     /**
-     * 更新 ES blog
+     * 阅读量+1：先在 ReadingCountBuffer 中合并，定时批量写入 Redis，再由 EsCounterSyncQueue 异步同步到 ES
+     * 调用方应先确认博客存在（空数据的阅读量在写入 Redis 时被丢弃）
      *
-     * @param blogId 博客id
+     * @param id 博客id
      */
-    private void updateEsBlog(Long blogId, Integer readCount) {
-        EsBlog esBlog = null;
-        try {
-            esBlog = esBlogRepository.findByBlogId(blogId);
-        } catch (Exception e) {
-            log.error("【ES】阅读量 ：{}", e.getMessage());
-            return;
-        }
-        if (esBlog == null) {
-            // log.error("【ES】不存在 blog:{}", blogId);
-            return;
-        }
-       /*
-       注意这里要避免 NPE 不能使用 long 类型，应该使用 包装类 Long 并且判空
-       Long oldRead = esBlog.getReadCount()
-        if (oldRead == null || oldRead == 0) {
-            esBlog.setReadCount((long) 1)
-        } else {
-            esBlog.setReadCount(oldRead + 1)
-        }
-        */
-        esBlog.setReadCount((long) readCount);
-        esBlogRepository.save(esBlog);
+    @Override
+    public void readingIncrement(Long id) {
+        // blogRepository.readingIncrement(id);
+        readingCountBuffer.increment(id);
     }
 
     /**
@@ -337,22 +304,25 @@ public class BlogServiceImpl implements BlogService {
 
     /**
      * 使用缓存中的 指标量 展示博客
+     * <p>
+     * 系统正忙（限流拒绝 / 等待超时）时，使用博客自身（数据库 / 博客缓存）中的指标量兜底：数据略旧，但不必让请求失败
      *
      * @param blog blog
      */
     private void blogCacheEvaluation(Blog blog) {
         // 从缓存中获取 阅读量、点赞量、评论量
         // 先查询 缓存
-        BlogEvaluationCacheDTO cacheDTO = cacheService.getBlogEvaluationByBlogId2Redis(blog.getBlogId());
-        if (Objects.isNull(cacheDTO)) {
-            // 缓存中不存在：查询mysql
-            try {
-                log.info("【数据库】 查询 blog:{}", blog.getBlogId());
-                cacheDTO = cacheService.getBlogEvaluationFromMysql(blog.getBlogId());
-            } catch (NullBlogException e) {
-                // todo 获取博客列表应该不会出现这种情况
-                log.error("【数据库】 blog:{} 不存在 ", blog.getBlogId());
+        BlogEvaluationCacheDTO cacheDTO;
+        try {
+            cacheDTO = cacheService.getBlogEvaluationByBlogId2Redis(blog.getBlogId());
+            if (Objects.isNull(cacheDTO)) {
+                // 缓存中不存在：查询mysql
+                cacheDTO = cacheService.getBlogEvaluationFromMysql(blog.getBlogId(), () -> staleEvaluation(blog));
             }
+        } catch (NullBlogException e) {
+            // todo 获取博客列表应该不会出现这种情况
+            log.error("【数据库】 blog:{} 不存在 ", blog.getBlogId());
+            return;
         }
         Integer readCount = cacheDTO.getReadingCount();
         Integer commentCount = cacheDTO.getCommentCount();
@@ -361,4 +331,23 @@ public class BlogServiceImpl implements BlogService {
         blog.setCommentCount((long) commentCount);
         blog.setLikeCount((long) voteCount);
     }
+
+    /**
+     * 过期的指标量：博客自身记录的 阅读量、点赞量、评论量
+     *
+     * @param blog blog
+     * @return dto
+     */
+    private BlogEvaluationCacheDTO staleEvaluation(Blog blog) {
+        BlogEvaluationCacheDTO stale = new BlogEvaluationCacheDTO();
+        stale.setBlogId(blog.getBlogId());
+        stale.setReadingCount(toInt(blog.getReadCount()));
+        stale.setCommentCount(toInt(blog.getCommentCount()));
+        stale.setVoteCount(toInt(blog.getLikeCount()));
+        return stale;
+    }
+
+    private Integer toInt(Long count) {
+        return Objects.isNull(count) ? 0 : Math.toIntExact(count);
+    }
 }
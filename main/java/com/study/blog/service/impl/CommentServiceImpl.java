@@ -1,16 +1,13 @@
 package com.study.blog.service.impl;
 
+import com.study.blog.dto.CommentPageDTO;
 import com.study.blog.entity.Comment;
-import com.study.blog.entity.EsBlog;
-import com.study.blog.repository.es2search.EsBlogRepository;
 import com.study.blog.service.BlogEvaluationCacheService;
 import com.study.blog.service.CommentService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 /**
  * @author 10652
  */
@@ -18,19 +15,19 @@ import java.util.List;
 @Slf4j
 public class CommentServiceImpl implements CommentService {
 
-    private final EsBlogRepository esBlogRepository;
+    private final EsCounterSyncQueue esCounterSyncQueue;
     private final BlogEvaluationCacheService cacheService;
 
     @Autowired
-    public CommentServiceImpl(EsBlogRepository esBlogRepository, BlogEvaluationCacheService cacheService) {
-        this.esBlogRepository = esBlogRepository;
+    public CommentServiceImpl(EsCounterSyncQueue esCounterSyncQueue, BlogEvaluationCacheService cacheService) {
+        this.esCounterSyncQueue = esCounterSyncQueue;
         this.cacheService = cacheService;
     }
 
     @Override
-    public List<Comment> listComment(Long blogId) {
+    public CommentPageDTO listComment(Long blogId, String cursor, int limit) {
         // return commentRepository.listComment(blogId)
-        return cacheService.getBlogCommentListByBlogId(blogId);
+        return cacheService.getBlogCommentPage(blogId, cursor, limit);
     }
 
     @Override
@@ -39,8 +36,9 @@ public class CommentServiceImpl implements CommentService {
         commentRepository.insertComment(new Comment(userId, content, blogId))
         commentRepository.incrementCommentCount(blogId)
         */
-        Integer commentCount = Math.toIntExact(cacheService.addBlogComment(new Comment(userId, content, blogId)));
-        updateEsBlog(blogId, commentCount);
+        Long commentCount = cacheService.addBlogComment(new Comment(userId, content, blogId));
+        // 异步同步到 ES
+        esCounterSyncQueue.offerCommentCount(blogId, commentCount);
     }
 
     @Override
@@ -49,39 +47,8 @@ public class CommentServiceImpl implements CommentService {
         commentRepository.deleteComment(id)
         commentRepository.decrementCommentCount(blogId)
         */
-        Integer commentCount = Math.toIntExact(cacheService.deleteBlogComment(blogId, id));
-        updateEsBlog(blogId, commentCount);
-    }
-
-    /**
-     * 更新 ES Blog
-     *
-     * @param blogId       博客id
-     * @param commentCount commentCount
-     */
-    private void updateEsBlog(Long blogId, Integer commentCount) {
-        EsBlog esBlog = null;
-        try {
-            esBlog = esBlogRepository.findByBlogId(blogId);
-        } catch (Exception e) {
-            log.error("【保存更新 ES】评论量 ：{}", e.getMessage());
-            return;
-        }
-        if (esBlog == null) {
-            log.error("【保存更新 ES】评论量 ：EsBlog 检索为NULL");
-            return;
-        }
-        /*
-        int plus = (judge) ? 1 : -1
-        Long oldComment = esBlog.getCommentCount()
-
-        if (oldComment == null || oldComment == 0) {
-            esBlog.setCommentCount((long) 1)
-        } else {
-            esBlog.setCommentCount(oldComment + plus)
-        }
-        */
-        esBlog.setCommentCount((long) commentCount);
-        esBlogRepository.save(esBlog);
+        Long commentCount = cacheService.deleteBlogComment(blogId, id);
+        // 异步同步到 ES
+        esCounterSyncQueue.offerCommentCount(blogId, commentCount);
     }
 }
@@ -1,13 +1,22 @@
 package com.study.blog.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.study.blog.dto.EsBlogCounter;
 import com.study.blog.entity.EsBlog;
 import com.study.blog.entity.User;
 import com.study.blog.repository.es2search.EsBlogRepository;
 import com.study.blog.service.EsBlogService;
 import com.study.blog.service.UserService;
 import com.study.blog.vo.TagVO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
@@ -18,19 +27,34 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.ElasticsearchException;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.SearchQuery;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+import org.springframework.data.elasticsearch.core.query.UpdateQueryBuilder;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 
 /**
  * @author 10652
  */
+@Slf4j
 @Service
 public class EsBlogServiceImpl implements EsBlogService {
 
@@ -42,9 +66,16 @@ public class EsBlogServiceImpl implements EsBlogService {
      * 空字符串常量
      */
     private static final String EMPTY_KEYWORD = "";
+    private static final String BLOG_ID = "blogId";
+    private static final String BLOG_INDEX = "blog";
+    private static final String BLOG_TYPE = "blog";
     private final EsBlogRepository esBlogRepository;
     private final ElasticsearchTemplate elasticsearchTemplate;
     private final UserService userService;
+    /**
+     * blogId -> ES 文档 id：更新指标量时不必每次查询
+     */
+    private final Cache<Long, String> esIds;
 
     @Autowired
     public EsBlogServiceImpl(EsBlogRepository esBlogRepository, ElasticsearchTemplate elasticsearchTemplate,
@@ -52,6 +83,7 @@ public class EsBlogServiceImpl implements EsBlogService {
         this.esBlogRepository = esBlogRepository;
         this.elasticsearchTemplate = elasticsearchTemplate;
         this.userService = userService;
+        this.esIds = Caffeine.newBuilder().maximumSize(100_000).expireAfterAccess(1, TimeUnit.HOURS).build();
     }
 
     /**
@@ -258,4 +290,205 @@ public class EsBlogServiceImpl implements EsBlogService {
         return userService.listUserByName(usernameList);
     }
 
+    /**
+     * bulk 局部更新：只写入不为 null 的指标量字段，不重建 title、summary、content、tags 的索引
+     * ES 中不存在的博客被忽略；部分失败时只返回失败的文档
+     *
+     * @param counters 指标量
+     * @return 写入失败的指标量
+     */
+    @Override
+    public List<EsBlogCounter> updateCounters(List<EsBlogCounter> counters) {
+        Map<Long, String> ids;
+        try {
+            ids = findEsIds(counters.stream().map(EsBlogCounter::getBlogId).collect(Collectors.toList()));
+        } catch (Exception e) {
+            log.error("【ES 指标量】查询文档 id 失败：{}", e.getMessage());
+            return counters;
+        }
+        List<UpdateQuery> updateQueries = new ArrayList<>(counters.size());
+        Map<String, EsBlogCounter> updated = new HashMap<>(counters.size() << 1);
+        for (EsBlogCounter counter : counters) {
+            String esId = ids.get(counter.getBlogId());
+            if (Objects.isNull(esId)) {
+                // ES 中不存在该博客
+                continue;
+            }
+            Map<String, Object> doc = new HashMap<>(4);
+            if (!Objects.isNull(counter.getReadCount())) {
+                doc.put("readCount", counter.getReadCount());
+            }
+            if (!Objects.isNull(counter.getCommentCount())) {
+                doc.put("commentCount", counter.getCommentCount());
+            }
+            if (!Objects.isNull(counter.getLikeCount())) {
+                doc.put("likeCount", counter.getLikeCount());
+            }
+            updateQueries.add(new UpdateQueryBuilder().withId(esId).withClass(EsBlog.class)
+                    .withUpdateRequest(new UpdateRequest().doc(doc)).build());
+            updated.put(esId, counter);
+        }
+        if (updateQueries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            elasticsearchTemplate.bulkUpdate(updateQueries);
+            return Collections.emptyList();
+        } catch (ElasticsearchException e) {
+            // 部分失败：只重试失败的文档
+            List<EsBlogCounter> failedCounters = new ArrayList<>(e.getFailedDocuments().size());
+            e.getFailedDocuments().keySet().forEach(esId -> {
+                EsBlogCounter counter = updated.get(esId);
+                if (!Objects.isNull(counter)) {
+                    esIds.invalidate(counter.getBlogId());
+                    failedCounters.add(counter);
+                }
+            });
+            log.error("【ES 指标量】{} 个博客写入失败：{}", failedCounters.size(), e.getMessage());
+            return failedCounters;
+        } catch (Exception e) {
+            log.error("【ES 指标量】bulk 写入失败：{}", e.getMessage());
+            return counters;
+        }
+    }
+
+    /**
+     * 已存在的博客：bulk 局部更新内容字段，指标量由 updateCounters 维护，这里不覆盖
+     * 不存在的博客：bulk 新增完整文档，文档 id 为 blogId
+     *
+     * @param esBlogs 博客
+     * @return 写入失败的 blogId
+     */
+    @Override
+    public Set<Long> saveBlogs(List<EsBlog> esBlogs) {
+        Map<Long, String> ids;
+        try {
+            ids = findEsIds(esBlogs.stream().map(EsBlog::getBlogId).collect(Collectors.toList()));
+        } catch (Exception e) {
+            log.error("【ES 博客】查询文档 id 失败：{}", e.getMessage());
+            return esBlogs.stream().map(EsBlog::getBlogId).collect(Collectors.toSet());
+        }
+        List<UpdateQuery> updateQueries = new ArrayList<>();
+        List<IndexQuery> indexQueries = new ArrayList<>();
+        Map<String, Long> blogIds = new HashMap<>(esBlogs.size() << 1);
+        for (EsBlog esBlog : esBlogs) {
+            String esId = ids.get(esBlog.getBlogId());
+            if (Objects.isNull(esId)) {
+                esId = String.valueOf(esBlog.getBlogId());
+                indexQueries.add(new IndexQueryBuilder().withId(esId).withObject(esBlog).build());
+            } else {
+                Map<String, Object> doc = new HashMap<>(16);
+                doc.put("title", esBlog.getTitle());
+                doc.put("summary", esBlog.getSummary());
+                doc.put("content", esBlog.getContent());
+                doc.put("tags", esBlog.getTags());
+                doc.put("username", esBlog.getUsername());
+                doc.put("avatar", esBlog.getAvatar());
+                if (!Objects.isNull(esBlog.getCreateTime())) {
+                    // 与实体映射一致：以毫秒数写入
+                    doc.put("createTime", esBlog.getCreateTime().getTime());
+                }
+                updateQueries.add(new UpdateQueryBuilder().withId(esId).withClass(EsBlog.class)
+                        .withUpdateRequest(new UpdateRequest().doc(doc)).build());
+            }
+            blogIds.put(esId, esBlog.getBlogId());
+        }
+        Set<Long> failed = new HashSet<>();
+        if (!updateQueries.isEmpty()) {
+            failed.addAll(bulk(() -> elasticsearchTemplate.bulkUpdate(updateQueries), blogIds));
+        }
+        if (!indexQueries.isEmpty()) {
+            failed.addAll(bulk(() -> elasticsearchTemplate.bulkIndex(indexQueries), blogIds));
+        }
+        return failed;
+    }
+
+    @Override
+    public Set<Long> deleteBlogs(Collection<Long> blogIds) {
+        Map<Long, String> ids;
+        try {
+            ids = findEsIds(blogIds);
+        } catch (Exception e) {
+            log.error("【ES 博客】查询文档 id 失败：{}", e.getMessage());
+            return new HashSet<>(blogIds);
+        }
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        BulkRequestBuilder bulkRequest = elasticsearchTemplate.getClient().prepareBulk();
+        Map<String, Long> esIdToBlogId = new HashMap<>(ids.size() << 1);
+        ids.forEach((blogId, esId) -> {
+            bulkRequest.add(new DeleteRequest(BLOG_INDEX, BLOG_TYPE, esId));
+            esIdToBlogId.put(esId, blogId);
+            esIds.invalidate(blogId);
+        });
+        Set<Long> failed = new HashSet<>();
+        try {
+            BulkResponse response = bulkRequest.get();
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failed.add(esIdToBlogId.get(item.getId()));
+                }
+            }
+        } catch (Exception e) {
+            log.error("【ES 博客】bulk 删除失败：{}", e.getMessage());
+            return new HashSet<>(ids.keySet());
+        }
+        if (!failed.isEmpty()) {
+            log.error("【ES 博客】{} 个博客删除失败", failed.size());
+        }
+        return failed;
+    }
+
+    /**
+     * 执行 bulk 请求：部分失败时只返回失败的 blogId
+     */
+    private Set<Long> bulk(Runnable request, Map<String, Long> blogIds) {
+        try {
+            request.run();
+            return Collections.emptySet();
+        } catch (ElasticsearchException e) {
+            Set<Long> failed = new HashSet<>();
+            e.getFailedDocuments().keySet().forEach(esId -> {
+                Long blogId = blogIds.get(esId);
+                if (!Objects.isNull(blogId)) {
+                    esIds.invalidate(blogId);
+                    failed.add(blogId);
+                }
+            });
+            log.error("【ES 博客】{} 个博客写入失败：{}", failed.size(), e.getMessage());
+            return failed;
+        } catch (Exception e) {
+            log.error("【ES 博客】bulk 写入失败：{}", e.getMessage());
+            return new HashSet<>(blogIds.values());
+        }
+    }
+
+    /**
+     * 批量获取 ES 文档 id：未缓存的 blogId 通过一次 terms 查询获取（只取 blogId 字段）
+     */
+    private Map<Long, String> findEsIds(Collection<Long> blogIds) {
+        Map<Long, String> ids = new HashMap<>(blogIds.size() << 1);
+        List<Long> missing = new ArrayList<>();
+        blogIds.forEach(blogId -> {
+            String esId = esIds.getIfPresent(blogId);
+            if (Objects.isNull(esId)) {
+                missing.add(blogId);
+            } else {
+                ids.put(blogId, esId);
+            }
+        });
+        if (!missing.isEmpty()) {
+            List<EsBlog> esBlogs = elasticsearchTemplate.queryForList(new NativeSearchQueryBuilder()
+                    .withQuery(QueryBuilders.termsQuery(BLOG_ID, missing))
+                    .withSourceFilter(new FetchSourceFilter(new String[]{BLOG_ID}, null))
+                    .withPageable(PageRequest.of(0, missing.size()))
+                    .build(), EsBlog.class);
+            esBlogs.forEach(esBlog -> {
+                esIds.put(esBlog.getBlogId(), esBlog.getId());
+                ids.put(esBlog.getBlogId(), esBlog.getId());
+            });
+        }
+        return ids;
+    }
 }
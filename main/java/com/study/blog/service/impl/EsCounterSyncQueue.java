@@ -0,0 +1,229 @@
+package com.study.blog.service.impl;
+
+import com.study.blog.dto.BlogEvaluationCacheDTO;
+import com.study.blog.dto.EsBlogCounter;
+import com.study.blog.exception.NullBlogException;
+import com.study.blog.service.BlogEvaluationCacheService;
+import com.study.blog.service.EsBlogService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 【ES 指标量同步】
+ * 阅读量、评论量、点赞量不再在请求线程中同步到 ES（findByBlogId + save 整个文档，两次 ES 往返），而是：
+ * （1）请求线程：将最新的指标量放入 pending（同一个博客的多次更新合并为一次，后到的值覆盖先到的值）
+ * （2）每隔 intervalMillis：在 timeBudgetMillis 之内，每次取出最多 batchSize 个博客，通过
+ * EsBlogService.updateCounters 以 bulk 的局部更新（_update，只包含指标量字段）写入 ES，直到 pending 为空
+ * （3）写入失败的博客重新放入 pending（不覆盖期间到达的新值），最多重试 maxRetries 次
+ * <p>
+ * 背压：pending 达到 maxPending 时，新博客的更新不再放入 pending，只将 blogId 记入 dirty（已在 pending 中的博客
+ * 仍可合并），并记录 es.counter.sync.dropped；pending 有空位时，从 Redis 读取 dirty 中博客的最新指标量放入 pending，
+ * 所以被拒绝的更新不会丢失（只是延迟）
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class EsCounterSyncQueue {
+    private final EsBlogService esBlogService;
+    private final BlogEvaluationCacheService evaluationCacheService;
+    private final ConcurrentHashMap<Long, EsBlogCounter> pending;
+    /**
+     * pending 已满时被拒绝的博客：只记录 blogId，之后从 Redis 读取最新指标量
+     */
+    private final Set<Long> dirty;
+    private final ScheduledExecutorService syncExecutor;
+    private final int maxPending;
+    private final int batchSize;
+    private final long timeBudgetMillis;
+    private final int maxRetries;
+    private final Counter dropped;
+    private final Counter failed;
+
+    @Autowired
+    public EsCounterSyncQueue(EsBlogService esBlogService, BlogEvaluationCacheService evaluationCacheService,
+                              @Value("${es.counter-sync.interval-millis:1000}") long intervalMillis,
+                              @Value("${es.counter-sync.max-pending:10000}") int maxPending,
+                              @Value("${es.counter-sync.batch-size:500}") int batchSize,
+                              @Value("${es.counter-sync.time-budget-millis:500}") long timeBudgetMillis,
+                              @Value("${es.counter-sync.max-retries:3}") int maxRetries) {
+        this.esBlogService = esBlogService;
+        this.evaluationCacheService = evaluationCacheService;
+        this.pending = new ConcurrentHashMap<>(256);
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.maxRetries = maxRetries;
+        Gauge.builder("es.counter.sync.pending", pending, Map::size)
+                .description("等待同步到 ES 的博客数").register(Metrics.globalRegistry);
+        Gauge.builder("es.counter.sync.dirty", dirty, Set::size)
+                .description("pending 已满、等待从 Redis 重新读取指标量的博客数").register(Metrics.globalRegistry);
+        this.dropped = Counter.builder("es.counter.sync.dropped")
+                .description("pending 已满被拒绝（记入 dirty）的更新次数").register(Metrics.globalRegistry);
+        this.failed = Counter.builder("es.counter.sync.failed")
+                .description("超过重试次数被放弃的博客数").register(Metrics.globalRegistry);
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-counter-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncExecutor.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void offerReadCount(Long blogId, Long readCount) {
+        offer(EsBlogCounter.ofReadCount(blogId, readCount));
+    }
+
+    public void offerCommentCount(Long blogId, Long commentCount) {
+        offer(EsBlogCounter.ofCommentCount(blogId, commentCount));
+    }
+
+    public void offerLikeCount(Long blogId, Long likeCount) {
+        offer(EsBlogCounter.ofLikeCount(blogId, likeCount));
+    }
+
+    private void offer(EsBlogCounter counter) {
+        if (Objects.isNull(counter.getBlogId())) {
+            return;
+        }
+        if (pending.size() >= maxPending && !pending.containsKey(counter.getBlogId())) {
+            dropped.increment();
+            dirty.add(counter.getBlogId());
+            return;
+        }
+        pending.merge(counter.getBlogId(), counter, EsBlogCounter::merge);
+    }
+
+    /**
+     * 同步：在 timeBudgetMillis 之内
+     * 1. 连续 bulk，直到 pending 为空
+     * 2. pending 有空位时，从 Redis 读取 dirty 中博客的最新指标量放入 pending，再同步
+     */
+    void sync() {
+        long deadline = System.currentTimeMillis() + timeBudgetMillis;
+        do {
+            while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+                syncBatch();
+            }
+        } while (System.currentTimeMillis() < deadline && refill());
+    }
+
+    /**
+     * 同步一批：取出最多 batchSize 个博客，bulk 局部更新
+     */
+    private void syncBatch() {
+        List<EsBlogCounter> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<Long> blogIds = pending.keySet().iterator();
+        while (blogIds.hasNext() && batch.size() < batchSize) {
+            EsBlogCounter counter = pending.remove(blogIds.next());
+            if (!Objects.isNull(counter)) {
+                batch.add(counter);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        retry(esBlogService.updateCounters(batch));
+    }
+
+    /**
+     * 从 dirty 中取出最多 batchSize 个博客（不超过 pending 的空位），从 Redis（未命中时从数据库）读取最新指标量
+     * 放入 pending：pending 中已有的值是之后到达的，优先；读取失败的博客留在 dirty 中，下次重试
+     *
+     * @return 是否有博客放入 pending
+     */
+    private boolean refill() {
+        int room = Math.min(batchSize, maxPending - pending.size());
+        boolean refilled = false;
+        Iterator<Long> blogIds = dirty.iterator();
+        while (blogIds.hasNext() && room-- > 0) {
+            Long blogId = blogIds.next();
+            blogIds.remove();
+            try {
+                BlogEvaluationCacheDTO evaluation = evaluationCacheService.getBlogEvaluationByBlogId2Redis(blogId);
+                if (Objects.isNull(evaluation)) {
+                    evaluation = evaluationCacheService.getBlogEvaluationFromMysql(blogId);
+                }
+                if (Objects.isNull(evaluation)) {
+                    dirty.add(blogId);
+                    continue;
+                }
+                EsBlogCounter counter = EsBlogCounter.ofCounts(blogId, toLong(evaluation.getReadingCount()),
+                        toLong(evaluation.getCommentCount()), toLong(evaluation.getVoteCount()));
+                pending.merge(blogId, counter, (newer, fresh) -> fresh.merge(newer));
+                refilled = true;
+            } catch (NullBlogException e) {
+                log.info("【ES 指标量同步】blog:{} 已不存在，不再同步", blogId);
+            } catch (RuntimeException e) {
+                dirty.add(blogId);
+                log.error("【ES 指标量同步】blog:{} 读取指标量失败：{}", blogId, e.getMessage());
+                return refilled;
+            }
+        }
+        return refilled;
+    }
+
+    private static Long toLong(Integer count) {
+        return Objects.isNull(count) ? null : count.longValue();
+    }
+
+    /**
+     * 写入失败的博客重新放入 pending：期间到达的新值优先
+     */
+    private void retry(List<EsBlogCounter> failedCounters) {
+        failedCounters.forEach(counter -> {
+            EsBlogCounter retried = counter.retried();
+            if (retried.getAttempts() > maxRetries) {
+                failed.increment();
+                log.error("【ES 指标量同步】blog:{} 超过重试次数，放弃", counter.getBlogId());
+                return;
+            }
+            pending.merge(counter.getBlogId(), retried, (newer, old) -> old.merge(newer));
+        });
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Throwable throwable) {
+            log.error("【ES 指标量同步】同步异常：{}", throwable.getMessage());
+        }
+    }
+
+    /**
+     * 关闭应用：停止定时任务，最后同步一次
+     */
+    @PreDestroy
+    void destroy() throws InterruptedException {
+        syncExecutor.shutdown();
+        if (!syncExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.error("【ES 指标量同步】定时任务未能在 5s 内结束");
+        }
+        while (!pending.isEmpty() || !dirty.isEmpty()) {
+            int before = pending.size() + dirty.size();
+            syncQuietly();
+            if (pending.size() + dirty.size() >= before) {
+                break;
+            }
+        }
+    }
+}
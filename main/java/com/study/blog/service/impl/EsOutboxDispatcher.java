@@ -0,0 +1,183 @@
+package com.study.blog.service.impl;
+
+import com.study.blog.constant.CacheConstant;
+import com.study.blog.entity.Blog;
+import com.study.blog.entity.EsBlog;
+import com.study.blog.entity.EsOutbox;
+import com.study.blog.entity.User;
+import com.study.blog.lock.RedisDistributedLock;
+import com.study.blog.repository.BlogRepository;
+import com.study.blog.repository.EsOutboxRepository;
+import com.study.blog.repository.UserMapper;
+import com.study.blog.service.EsBlogService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 【ES outbox 同步】
+ * 博客的新增、修改、删除只在同一个事务中写入 es_outbox（blogId），由 EsOutboxQuartzJob 定时调用本组件同步到 ES：
+ * （1）按 id 顺序批量获取 outbox 记录，同一博客的多条记录合并为一次同步
+ * （2）批量查询博客的当前状态：存在则写入 ES（EsBlogService.saveBlogs），不存在则从 ES 中删除（EsBlogService.deleteBlogs）
+ * （3）同步成功的记录被删除；失败的记录失败次数 +1，在下一次执行时重试，达到 max-attempts 后转为死信（dead = 1），
+ * 不再获取，只在转为死信时记录一次错误日志 与 es.outbox.dead
+ * <p>
+ * 重建索引期间，写入 ES 之前先通过 EsReindexer.recordChanges 记录博客，由重建在切换别名前后重放到新索引，
+ * 避免写入旧索引的修改在切换后丢失
+ * <p>
+ * 同步的是数据库中的当前状态而不是操作本身，因此记录的顺序、重复同步都不影响最终结果
+ * <p>
+ * 多个节点不能同时同步：节点 A 读到旧状态后，节点 B 读到新状态、写入 ES 并删除记录，A 再写入旧状态，
+ * ES 中留下旧内容且没有记录可以修复。因此同步前先获取分布式锁 ES_OUTBOX_LOCK（租约 es.outbox.lease-millis），
+ * 每同步一批续约一次，续约失败（锁已丢失）时停止；其他节点获取失败时跳过本次执行
+ * （EsOutboxQuartzJob 的 @DisallowConcurrentExecution 只在同一个 JVM 内有效）
+ * <p>
+ * 指标：es.outbox.synced（同步成功的记录数）、es.outbox.failed（同步失败的记录数）、es.outbox.dead（转为死信的记录数）
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class EsOutboxDispatcher {
+    private final EsOutboxRepository outboxRepository;
+    private final BlogRepository blogRepository;
+    private final UserMapper userMapper;
+    private final EsBlogService esBlogService;
+    private final EsReindexer esReindexer;
+    private final RedisDistributedLock distributedLock;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long leaseMillis;
+    private final Counter synced;
+    private final Counter failed;
+    private final Counter dead;
+
+    @Autowired
+    public EsOutboxDispatcher(EsOutboxRepository outboxRepository, BlogRepository blogRepository,
+                              UserMapper userMapper, EsBlogService esBlogService, EsReindexer esReindexer,
+                              RedisDistributedLock distributedLock,
+                              @Value("${es.outbox.batch-size:500}") int batchSize,
+                              @Value("${es.outbox.max-attempts:10}") int maxAttempts,
+                              @Value("${es.outbox.lease-millis:60000}") long leaseMillis) {
+        this.outboxRepository = outboxRepository;
+        this.blogRepository = blogRepository;
+        this.userMapper = userMapper;
+        this.esBlogService = esBlogService;
+        this.esReindexer = esReindexer;
+        this.distributedLock = distributedLock;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.leaseMillis = leaseMillis;
+        this.synced = Counter.builder("es.outbox.synced").description("同步到 ES 成功的 outbox 记录数")
+                .register(Metrics.globalRegistry);
+        this.failed = Counter.builder("es.outbox.failed").description("同步到 ES 失败的 outbox 记录数")
+                .register(Metrics.globalRegistry);
+        this.dead = Counter.builder("es.outbox.dead").description("失败次数达到上限、转为死信的 outbox 记录数")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 同步所有待同步的记录：某一批存在失败时停止，留到下一次执行，避免连续消耗重试次数
+     * 持有 ES_OUTBOX_LOCK 期间才同步：其他节点正在同步时跳过，锁丢失时停止
+     */
+    public void dispatch() {
+        long token = ThreadLocalRandom.current().nextLong();
+        if (!distributedLock.tryLock(CacheConstant.ES_OUTBOX_LOCK, token, leaseMillis)) {
+            log.info("【ES outbox】其他节点正在同步，跳过");
+            return;
+        }
+        try {
+            List<EsOutbox> outboxes;
+            do {
+                outboxes = outboxRepository.listPending(batchSize);
+                if (outboxes.isEmpty()) {
+                    return;
+                }
+            } while (dispatch(outboxes) && outboxes.size() == batchSize && renew(token));
+        } finally {
+            distributedLock.release(CacheConstant.ES_OUTBOX_LOCK, token);
+        }
+    }
+
+    private boolean renew(long token) {
+        if (distributedLock.renew(CacheConstant.ES_OUTBOX_LOCK, token, leaseMillis)) {
+            return true;
+        }
+        log.error("【ES outbox】分布式锁已丢失（一批同步超过租期 {} ms），停止同步", leaseMillis);
+        return false;
+    }
+
+    /**
+     * 同步一批记录
+     *
+     * @return true：全部同步成功
+     */
+    private boolean dispatch(List<EsOutbox> outboxes) {
+        Set<Long> blogIds = outboxes.stream().map(EsOutbox::getBlogId).collect(Collectors.toSet());
+        esReindexer.recordChanges(blogIds);
+        List<Blog> blogs = blogRepository.listBlogByIds(blogIds);
+        Map<Integer, User> users = blogs.isEmpty() ? Collections.emptyMap() :
+                userMapper.findUsersByIds(blogs.stream().map(Blog::getUserId).collect(Collectors.toSet()))
+                        .stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        Set<Long> deleted = new HashSet<>(blogIds);
+        List<EsBlog> esBlogs = new ArrayList<>(blogs.size());
+        for (Blog blog : blogs) {
+            deleted.remove(blog.getBlogId());
+            User user = users.get(blog.getUserId());
+            if (Objects.isNull(user)) {
+                log.error("【ES outbox】博客 {} 的作者 {} 不存在，跳过", blog.getBlogId(), blog.getUserId());
+                continue;
+            }
+            esBlogs.add(new EsBlog(blog, user));
+        }
+        Set<Long> failedBlogIds = new HashSet<>();
+        if (!esBlogs.isEmpty()) {
+            failedBlogIds.addAll(esBlogService.saveBlogs(esBlogs));
+        }
+        if (!deleted.isEmpty()) {
+            failedBlogIds.addAll(esBlogService.deleteBlogs(deleted));
+        }
+        List<Long> done = new ArrayList<>(outboxes.size());
+        List<Long> retry = new ArrayList<>();
+        List<Long> deadLetters = new ArrayList<>();
+        for (EsOutbox outbox : outboxes) {
+            if (!failedBlogIds.contains(outbox.getBlogId())) {
+                done.add(outbox.getId());
+                continue;
+            }
+            retry.add(outbox.getId());
+            if (outbox.getAttempts() + 1 >= maxAttempts) {
+                deadLetters.add(outbox.getId());
+                log.error("【ES outbox】博客 {} 同步失败 {} 次，转为死信：{}", outbox.getBlogId(), maxAttempts,
+                        outbox.getId());
+            }
+        }
+        if (!done.isEmpty()) {
+            outboxRepository.deleteByIds(done);
+            synced.increment(done.size());
+        }
+        if (!retry.isEmpty()) {
+            outboxRepository.increaseAttempts(retry);
+            failed.increment(retry.size());
+        }
+        if (!deadLetters.isEmpty()) {
+            outboxRepository.markDead(deadLetters);
+            dead.increment(deadLetters.size());
+        }
+        return retry.isEmpty();
+    }
+}
@@ -0,0 +1,278 @@
+package com.study.blog.service.impl;
+
+import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
+import com.study.blog.constant.CacheConstant;
+import com.study.blog.entity.Blog;
+import com.study.blog.entity.EsBlog;
+import com.study.blog.entity.User;
+import com.study.blog.repository.BlogRepository;
+import com.study.blog.repository.UserMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 【重建 ES 索引】
+ * 原 FlushESUtil.flushESByMySQL 一次性查询所有博客（包含 html_content），再逐个查询作者，最后一次 saveAll，
+ * 博客数量增长后内存、数据库往返 与 单个 bulk 请求都会失控；现在：
+ * （1）按 blog_id 翻页（keyset）读取博客，不查询 html_content，内存中最多只有一页
+ * （2）每页的作者通过一次 IN 查询获取
+ * （3）每页拆分为多个 bulk 请求，由固定大小的线程池并发写入
+ * （4）写入新索引 blog_{时间戳}，完成后通过别名 blog 原子切换，读写在切换前后都不受影响
+ * （5）每页写入完成后，在 Redis 中记录进度；中断后再次执行时，从上次的位置继续写入同一个新索引
+ * <p>
+ * 文档 id 为 blogId，重复写入同一篇博客只会覆盖，因此继续写入是幂等的
+ * <p>
+ * 重建期间（进度存在时），EsOutboxDispatcher 在写入旧索引之前，将博客记入 ES_REINDEX_CHANGED（recordChanges）；
+ * 写入完所有页之后、切换别名之前，以及切换别名之后，各重放一次：按数据库中的当前状态写入新索引 或 从新索引中删除，
+ * 因此重建期间的新增、修改、删除都不会丢失（指标量仍由之后的指标量同步更新）
+ * <p>
+ * 指标：es.reindex.documents（已写入的文档数）、es.reindex.last.blog.id（已写入的最大 blogId）
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class EsReindexer {
+    /**
+     * 对外使用的索引名称：切换后成为别名
+     */
+    private static final String ALIAS = "blog";
+    private static final String TYPE = "blog";
+    private static final String CHECKPOINT_INDEX = "index";
+    private static final String CHECKPOINT_BLOG_ID = "lastBlogId";
+
+    private final BlogRepository blogRepository;
+    private final UserMapper userMapper;
+    private final ElasticsearchTemplate elasticsearchTemplate;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final int pageSize;
+    private final int chunkSize;
+    private final int parallelism;
+    private final AtomicBoolean running;
+    private final AtomicLong lastBlogId;
+    private final Counter indexed;
+
+    @Autowired
+    public EsReindexer(BlogRepository blogRepository, UserMapper userMapper,
+                       ElasticsearchTemplate elasticsearchTemplate, RedisTemplate<String, Object> redisTemplate,
+                       @Value("${es.reindex.page-size:1000}") int pageSize,
+                       @Value("${es.reindex.chunk-size:200}") int chunkSize,
+                       @Value("${es.reindex.parallelism:4}") int parallelism) {
+        this.blogRepository = blogRepository;
+        this.userMapper = userMapper;
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.redisTemplate = redisTemplate;
+        this.pageSize = pageSize;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.running = new AtomicBoolean(false);
+        this.lastBlogId = new AtomicLong(0);
+        this.indexed = Counter.builder("es.reindex.documents").description("重建索引已写入的文档数")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("es.reindex.last.blog.id", lastBlogId, AtomicLong::get).description("重建索引已写入的最大 blogId")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 重建索引：完成后别名 blog 指向新索引，旧索引被删除
+     *
+     * @return 新索引名称
+     */
+    public String reindex() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("重建索引正在执行");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "es-reindex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<Object, Object> checkpoint = redisTemplate.opsForHash().entries(CacheConstant.ES_REINDEX_CHECKPOINT);
+            String index = resumeOrCreateIndex(checkpoint);
+            long afterBlogId;
+            if (index.equals(checkpoint.get(CHECKPOINT_INDEX))) {
+                afterBlogId = ((Number) checkpoint.get(CHECKPOINT_BLOG_ID)).longValue();
+            } else {
+                // 新索引：先记录进度，此后同步过的博客都会记入 ES_REINDEX_CHANGED
+                afterBlogId = 0L;
+                redisTemplate.delete(CacheConstant.ES_REINDEX_CHANGED);
+                saveCheckpoint(index, afterBlogId);
+            }
+            log.info("【重建索引】写入 {}，从 blogId > {} 开始", index, afterBlogId);
+            List<Blog> blogs;
+            while (!(blogs = blogRepository.listBlogAfter(afterBlogId, pageSize)).isEmpty()) {
+                indexPage(index, blogs, executor);
+                afterBlogId = blogs.get(blogs.size() - 1).getBlogId();
+                saveCheckpoint(index, afterBlogId);
+                lastBlogId.set(afterBlogId);
+                indexed.increment(blogs.size());
+            }
+            replayChanges(index, executor);
+            restoreSettings(index);
+            swapAlias(index);
+            // 切换之前已写入旧索引、但未赶上上一次重放的博客
+            replayChanges(index, executor);
+            redisTemplate.delete(CacheConstant.ES_REINDEX_CHECKPOINT);
+            redisTemplate.delete(CacheConstant.ES_REINDEX_CHANGED);
+            log.info("【重建索引】完成：{}", index);
+            return index;
+        } finally {
+            executor.shutdown();
+            running.set(false);
+        }
+    }
+
+    /**
+     * 重建期间同步过的博客：重建未在执行时不记录
+     * 应在写入 ES 之前调用，切换别名之后的重放才能覆盖写入旧索引的修改
+     *
+     * @param blogIds 即将同步到 ES 的博客
+     */
+    public void recordChanges(Collection<Long> blogIds) {
+        if (blogIds.isEmpty() || !Boolean.TRUE.equals(redisTemplate.hasKey(CacheConstant.ES_REINDEX_CHECKPOINT))) {
+            return;
+        }
+        redisTemplate.opsForSet().add(CacheConstant.ES_REINDEX_CHANGED, blogIds.toArray());
+    }
+
+    private void saveCheckpoint(String index, long afterBlogId) {
+        Map<String, Object> progress = new HashMap<>(4);
+        progress.put(CHECKPOINT_INDEX, index);
+        progress.put(CHECKPOINT_BLOG_ID, afterBlogId);
+        redisTemplate.opsForHash().putAll(CacheConstant.ES_REINDEX_CHECKPOINT, progress);
+    }
+
+    /**
+     * 重放重建期间同步过的博客：每次 SPOP 一页，存在的博客写入新索引，不存在的从新索引中删除
+     * 重放失败时 blogId 放回集合，再次执行时继续重放；重放期间再次同步的博客会被重新记入集合
+     */
+    private void replayChanges(String index, ExecutorService executor) {
+        List<Object> members;
+        while (!(members = redisTemplate.opsForSet().pop(CacheConstant.ES_REINDEX_CHANGED, pageSize)).isEmpty()) {
+            Set<Long> blogIds = members.stream().map(member -> ((Number) member).longValue())
+                    .collect(Collectors.toSet());
+            try {
+                List<Blog> blogs = blogRepository.listBlogByIds(blogIds);
+                if (!blogs.isEmpty()) {
+                    indexPage(index, blogs, executor);
+                }
+                blogs.forEach(blog -> blogIds.remove(blog.getBlogId()));
+                blogIds.forEach(blogId -> elasticsearchTemplate.delete(index, TYPE, String.valueOf(blogId)));
+            } catch (RuntimeException e) {
+                redisTemplate.opsForSet().add(CacheConstant.ES_REINDEX_CHANGED, members.toArray());
+                throw e;
+            }
+            log.info("【重建索引】重放重建期间同步过的博客：{} 篇", members.size());
+        }
+    }
+
+    /**
+     * 写入一页博客：作者批量查询，文档按 chunkSize 拆分为多个 bulk 请求并发写入
+     */
+    private void indexPage(String index, List<Blog> blogs, ExecutorService executor) {
+        Set<Integer> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Integer, User> users = userMapper.findUsersByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<IndexQuery> queries = new ArrayList<>(blogs.size());
+        for (Blog blog : blogs) {
+            User user = users.get(blog.getUserId());
+            if (Objects.isNull(user)) {
+                log.error("【重建索引】博客 {} 的作者 {} 不存在，跳过", blog.getBlogId(), blog.getUserId());
+                continue;
+            }
+            EsBlog esBlog = new EsBlog(blog, user);
+            queries.add(new IndexQueryBuilder().withId(esBlog.getId()).withObject(esBlog).withIndexName(index)
+                    .withType(TYPE).build());
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int from = 0; from < queries.size(); from += chunkSize) {
+            List<IndexQuery> chunk = queries.subList(from, Math.min(from + chunkSize, queries.size()));
+            futures.add(CompletableFuture.runAsync(() -> elasticsearchTemplate.bulkIndex(chunk), executor));
+        }
+        // 任意 bulk 请求失败时抛出异常，进度停留在上一页，再次执行时从上一页之后继续
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * 继续写入上次未完成的新索引，或 创建新索引：
+     * 复制当前索引的 mapping，写入期间关闭 refresh 与副本，减少写入开销
+     */
+    private String resumeOrCreateIndex(Map<Object, Object> checkpoint) {
+        Object resumed = checkpoint.get(CHECKPOINT_INDEX);
+        if (!Objects.isNull(resumed) && elasticsearchTemplate.indexExists(resumed.toString())) {
+            return resumed.toString();
+        }
+        String index = ALIAS + "_" + System.currentTimeMillis();
+        Map<String, Object> settings = new HashMap<>(4);
+        settings.put("index.refresh_interval", "-1");
+        settings.put("index.number_of_replicas", 0);
+        elasticsearchTemplate.createIndex(index, settings);
+        if (elasticsearchTemplate.indexExists(ALIAS)) {
+            elasticsearchTemplate.putMapping(index, TYPE, elasticsearchTemplate.getMapping(ALIAS, TYPE));
+        } else {
+            elasticsearchTemplate.putMapping(index, TYPE, elasticsearchTemplate.getMapping(EsBlog.class));
+        }
+        return index;
+    }
+
+    private void restoreSettings(String index) {
+        elasticsearchTemplate.getClient().admin().indices().prepareUpdateSettings(index)
+                .setSettings(Settings.builder().put("index.refresh_interval", "1s")
+                        .put("index.number_of_replicas", 1)).get();
+        elasticsearchTemplate.refresh(index);
+    }
+
+    /**
+     * 原子切换别名：
+     * （1）blog 是别名：从旧索引上移除别名，切换后删除旧索引
+     * （2）blog 是索引（首次重建）：删除该索引，同时添加别名
+     */
+    private void swapAlias(String index) {
+        IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+        IndicesAliasesRequestBuilder aliases = indices.prepareAliases().addAlias(index, ALIAS);
+        List<String> oldIndices = new ArrayList<>();
+        for (ObjectObjectCursor<String, List<AliasMetaData>> aliased : indices.prepareGetAliases(ALIAS).get()
+                .getAliases()) {
+            if (!index.equals(aliased.key) && !aliased.value.isEmpty()) {
+                aliases.removeAlias(aliased.key, ALIAS);
+                oldIndices.add(aliased.key);
+            }
+        }
+        if (oldIndices.isEmpty() && elasticsearchTemplate.indexExists(ALIAS)) {
+            aliases.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(ALIAS));
+        }
+        aliases.get();
+        oldIndices.forEach(elasticsearchTemplate::deleteIndex);
+        log.info("【重建索引】别名 {} 已切换到 {}，删除旧索引：{}", ALIAS, index, oldIndices);
+    }
+}
@@ -1,24 +1,148 @@
 package com.study.blog.service.impl;
 
+import com.alibaba.fastjson.JSONObject;
+import com.study.blog.constant.CacheConstant;
+import com.study.blog.entity.Comment;
 import com.study.blog.entity.ID;
 import com.study.blog.repository.IDRepository;
 import com.study.blog.service.IDService;
+import com.study.blog.util.BlogCacheUtil;
+import com.study.blog.util.RedisScriptUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 【id 分配】
+ * 评论、点赞原本先 INSERT（useGeneratedKeys）得到自增 id 之后才能写入 Redis，数据库在写入的关键路径上；现在：
+ * （1）每个 id 序列是 Redis 中的一个计数器，启动时设置为不小于数据库中的最大 id
+ * （2）每个节点通过 INCRBY 一次领取 segment-size 个 id（号段），号段用完之前分配 id 不访问 Redis
+ * （3）领取号段时校验号段在数据库中的最大 id 之后：计数器丢失或回退（Redis 故障切换、被清空）时，重新设置计数器后再领取
+ * （4）评论、点赞写入 Redis 后由定时任务批量写入数据库（id 冲突时写入失败，不会被忽略）
+ * <p>
+ * 号段在各节点之间不重叠，id 唯一；重启时未用完的号段被丢弃，id 不连续
+ *
+ * @author 10652
+ */
 @Slf4j
 @Service
 public class IDServiceImpl implements IDService {
+    private static final DefaultRedisScript<Long> SEED_ID_SCRIPT = RedisScriptUtil.load("lua/seedid.lua",
+            Long.class);
+
     private final IDRepository repository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long segmentSize;
+    private final ConcurrentMap<String, Segment> segments;
+    /**
+     * id 序列 -> 数据库中的最大 id
+     */
+    private final Map<String, Supplier<Long>> maxIds;
 
     @Autowired
-    public IDServiceImpl(IDRepository repository) {
+    public IDServiceImpl(IDRepository repository, RedisTemplate<String, Object> redisTemplate,
+                         @Value("${blog.id.segment-size:1000}") long segmentSize) {
         this.repository = repository;
+        this.redisTemplate = redisTemplate;
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentHashMap<>(4);
+        this.maxIds = new HashMap<>(4);
+        this.maxIds.put(CacheConstant.VOTE_ID, repository::findMaxVoteId);
+        this.maxIds.put(CacheConstant.COMMENT_ID, repository::findMaxCommentId);
     }
 
+    /**
+     * 启动时：计数器不小于数据库中的最大 id
+     */
+    @PostConstruct
+    void seed() {
+        maxIds.forEach((sequence, maxId) -> seed(sequence, maxId.get()));
+    }
+
+    private void seed(String sequence, Long maxId) {
+        Long seeded = redisTemplate.execute(SEED_ID_SCRIPT, Collections.singletonList(sequence),
+                Objects.isNull(maxId) ? 0L : maxId);
+        log.info("【id 分配】{} 计数器：{}", sequence, seeded);
+    }
+
+    /**
+     * 评论尚未写入数据库时，评论者从 Redis 中的评论获取
+     */
     @Override
     public ID getUserId(Long blogId, Long commentId) {
-        return repository.getUserId(blogId, commentId);
+        ID id = repository.getUserId(blogId, commentId);
+        if (Objects.isNull(id) || !Objects.isNull(id.getCommentUserId())) {
+            return id;
+        }
+        Object comment = redisTemplate.opsForHash().get(BlogCacheUtil.generateKey(CacheConstant.COMMENT, blogId),
+                commentId);
+        if (!Objects.isNull(comment)) {
+            id.setCommentUserId(JSONObject.parseObject(comment.toString(), Comment.class).getUserId());
+        }
+        return id;
+    }
+
+    @Override
+    public Long nextId(String sequence) {
+        return segments.computeIfAbsent(sequence, Segment::new).next();
+    }
+
+    /**
+     * 领取号段 (end - segmentSize, end]：号段与数据库中已存在的 id 重叠时，计数器重新设置为不小于最大 id，再领取一次
+     *
+     * @return 号段的结束 id
+     */
+    private long allocate(String sequence) {
+        long end = increment(sequence);
+        Supplier<Long> maxIdSupplier = maxIds.get(sequence);
+        Long maxId = Objects.isNull(maxIdSupplier) ? null : maxIdSupplier.get();
+        if (!Objects.isNull(maxId) && end - segmentSize < maxId) {
+            log.error("【id 分配】{} 号段 ({}, {}] 与数据库中的最大 id {} 重叠，重新设置计数器", sequence,
+                    end - segmentSize, end, maxId);
+            seed(sequence, maxId);
+            end = increment(sequence);
+        }
+        return end;
+    }
+
+    private long increment(String sequence) {
+        Long end = redisTemplate.opsForValue().increment(sequence, segmentSize);
+        if (Objects.isNull(end)) {
+            throw new IllegalStateException("【id 分配】领取号段失败：" + sequence);
+        }
+        return end;
+    }
+
+    /**
+     * 号段：(max - segmentSize, max]，用完后从 Redis 领取下一个号段（allocate）
+     */
+    private final class Segment {
+        private final String sequence;
+        private long next;
+        private long max;
+
+        private Segment(String sequence) {
+            this.sequence = sequence;
+        }
+
+        private synchronized long next() {
+            if (next == 0 || next > max) {
+                max = allocate(sequence);
+                next = max - segmentSize + 1;
+            }
+            return next++;
+        }
     }
 }
@@ -0,0 +1,149 @@
+package com.study.blog.service.impl;
+
+import com.study.blog.service.BlogEvaluationCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 【阅读量缓冲】
+ * 每次访问博客都执行一次 Redis 脚本，热门博客每秒上千次写入；本组件先在 JVM 内合并阅读量，再定时批量写入 Redis：
+ * （1）访问博客：blogId 对应的 LongAdder +1（分段累加，高并发下没有 CAS 竞争）
+ * （2）每隔 flushMillis：取走所有博客的增量，通过 BlogEvaluationCacheService 以 pipeline 一次往返写入 Redis
+ * （3）关闭应用：停止定时任务，最后写入一次
+ * <p>
+ * 取走增量时使用 sum() + add(-sum)，而不是 sumThenReset()：并发的累加不会丢失，只会留到下一次
+ * 写入 Redis 失败、或者博客的指标量尚未加载且系统正忙（READING_DEFERRED）时，增量加回缓冲区，下一次重试
+ * <p>
+ * 阅读量最多延迟 flushMillis（blog.reading.buffer.flush-millis）才会出现在 Redis 中
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class ReadingCountBuffer {
+    private final BlogEvaluationCacheService cacheService;
+    /**
+     * blogId - 未写入 Redis 的阅读量
+     */
+    private final ConcurrentHashMap<Long, LongAdder> readingDeltas;
+    /**
+     * 写入 Redis 之后的回调：blogId - 累加后的阅读量
+     */
+    private final List<BiConsumer<Long, Long>> listeners;
+    private final ScheduledExecutorService flushExecutor;
+
+    @Autowired
+    public ReadingCountBuffer(BlogEvaluationCacheService cacheService,
+                              @Value("${blog.reading.buffer.flush-millis:1000}") long flushMillis) {
+        this.cacheService = cacheService;
+        this.readingDeltas = new ConcurrentHashMap<>(256);
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reading-count-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 阅读量 +1
+     *
+     * @param blogId blogId
+     */
+    public void increment(Long blogId) {
+        if (Objects.isNull(blogId)) {
+            return;
+        }
+        readingDeltas.computeIfAbsent(blogId, id -> new LongAdder()).increment();
+    }
+
+    /**
+     * 注册写入 Redis 之后的回调
+     *
+     * @param listener blogId - 累加后的阅读量
+     */
+    public void addListener(BiConsumer<Long, Long> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 取走所有增量，批量写入 Redis
+     * <p>
+     * LongAdder 不会从 map 中移除（移除时并发的累加可能写入已被移除的 LongAdder），数量以博客总数为上限
+     */
+    void flush() {
+        Map<Long, Long> deltas = new HashMap<>(readingDeltas.size() << 1);
+        readingDeltas.forEach((blogId, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                adder.add(-delta);
+                deltas.put(blogId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> readingCounts;
+        try {
+            readingCounts = cacheService.incrementBlogReading(deltas);
+        } catch (Exception e) {
+            log.error("【阅读量缓冲】写入 Redis 失败，{} 个博客的阅读量留到下一次：{}", deltas.size(), e.getMessage());
+            deltas.forEach(this::restore);
+            return;
+        }
+        readingCounts.forEach((blogId, readingCount) -> {
+            if (Objects.equals(readingCount, BlogEvaluationCacheService.READING_DEFERRED)) {
+                restore(blogId, deltas.get(blogId));
+                return;
+            }
+            listeners.forEach(listener -> {
+                try {
+                    listener.accept(blogId, readingCount);
+                } catch (Exception e) {
+                    log.error("【阅读量缓冲】blog:{} 回调异常：{}", blogId, e.getMessage());
+                }
+            });
+        });
+    }
+
+    private void restore(Long blogId, Long delta) {
+        readingDeltas.computeIfAbsent(blogId, id -> new LongAdder()).add(delta);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Throwable throwable) {
+            log.error("【阅读量缓冲】写入异常：{}", throwable.getMessage());
+        }
+    }
+
+    /**
+     * 关闭应用：停止定时任务，最后写入一次
+     */
+    @PreDestroy
+    void destroy() throws InterruptedException {
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.error("【阅读量缓冲】定时任务未能在 5s 内结束");
+        }
+        flushQuietly();
+    }
+}
@@ -0,0 +1,250 @@
+package com.study.blog.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.study.blog.constant.CacheConstant;
+import com.study.blog.util.BlogCacheUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * 【点赞者过滤器】
+ * 大多数读者都没有点赞，查看博客时判断是否点赞，可以先经过本地的布隆过滤器：
+ * （1）过滤器判断 不存在：一定没有点赞，不访问 Redis
+ * （2）过滤器判断 可能存在：再通过点赞者 hash（VOTER:{blogId}）精确查询
+ * <p>
+ * 每个博客一个布隆过滤器，由点赞者 hash 的所有 userId 构建，保存在 Caffeine 中：
+ * （1）权重为过滤器的字节数，总内存不超过 max-bytes
+ * （2）点赞之后通过 pub/sub 通知所有节点加入 userId；取消点赞无法从布隆过滤器中删除，只会产生误判，由精确查询纠正
+ * （3）写入 expire-minutes 之后重建：清除取消点赞的 userId，并弥补丢失的通知
+ * <p>
+ * 注意：通知到达之前，其他节点可能短暂地判断为 未点赞，因此 点赞前的重复检测 不经过本过滤器
+ * <p>
+ * 指标：
+ * 1. voter.filter.negatives：判断为 不存在，跳过精确查询的次数
+ * 2. voter.filter.positives / voter.filter.false.positives：判断为 可能存在 的次数 / 其中精确查询为未点赞的次数
+ * 误判率 = false.positives / (negatives + false.positives)
+ * 3. voter.filter.bytes / voter.filter.blogs：过滤器占用的内存 / 过滤器数量
+ *
+ * @author 10652
+ */
+@Slf4j
+@Component
+public class VoterFilter implements MessageListener {
+    private static final String SEPARATOR = ":";
+    /**
+     * 点赞者 hash 的已加载标记字段
+     */
+    private static final Long VOTER_LOADED = 0L;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Cache<Long, Bloom> filters;
+    private final int minInsertions;
+    private final double fpp;
+    private final Counter negatives;
+    private final Counter positives;
+    private final Counter falsePositives;
+
+    @Autowired
+    public VoterFilter(RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                       @Value("${blog.voter-filter.max-bytes:16777216}") long maxBytes,
+                       @Value("${blog.voter-filter.expire-minutes:10}") long expireMinutes,
+                       @Value("${blog.voter-filter.min-insertions:64}") int minInsertions,
+                       @Value("${blog.voter-filter.fpp:0.01}") double fpp) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.minInsertions = minInsertions;
+        this.fpp = fpp;
+        this.filters = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long blogId, Bloom bloom) -> bloom.bytes())
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .build();
+        this.negatives = Counter.builder("voter.filter.negatives").description("判断为不存在，跳过精确查询的次数")
+                .register(Metrics.globalRegistry);
+        this.positives = Counter.builder("voter.filter.positives").description("判断为可能存在的次数")
+                .register(Metrics.globalRegistry);
+        this.falsePositives = Counter.builder("voter.filter.false.positives")
+                .description("判断为可能存在，精确查询为未点赞的次数").register(Metrics.globalRegistry);
+        Gauge.builder("voter.filter.bytes", filters, cache -> cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .description("过滤器占用的内存（字节）").register(Metrics.globalRegistry);
+        Gauge.builder("voter.filter.blogs", filters, Cache::estimatedSize).description("过滤器数量")
+                .register(Metrics.globalRegistry);
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.VOTER_FILTER_CHANNEL));
+    }
+
+    /**
+     * 用户是否可能已点赞
+     *
+     * @param blogId blogId
+     * @param userId userId
+     * @return false：一定没有点赞 true：可能已点赞（点赞者 hash 尚未加载时也返回 true）
+     */
+    public boolean mightContain(Long blogId, Integer userId) {
+        Bloom bloom = filters.get(blogId, this::load);
+        if (Objects.isNull(bloom)) {
+            return true;
+        }
+        if (bloom.mightContain(userId)) {
+            positives.increment();
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    /**
+     * 记录精确查询的结果：用于统计误判率
+     *
+     * @param voted 精确查询的结果
+     */
+    public void recordLookup(boolean voted) {
+        if (!voted) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * 点赞之后：通知所有节点（包括本节点）将 userId 加入过滤器
+     *
+     * @param blogId blogId
+     * @param userId userId
+     */
+    public void voted(Long blogId, Integer userId) {
+        redisTemplate.convertAndSend(CacheConstant.VOTER_FILTER_CHANNEL, blogId + SEPARATOR + userId);
+    }
+
+    /**
+     * 收到点赞通知：过滤器存在时加入 userId，不存在时忽略（下次构建时从点赞者 hash 中读取）
+     * computeIfPresent 与正在进行的构建互斥，不会丢失构建期间到达的通知
+     *
+     * @param message 消息体为 blogId:userId
+     * @param pattern pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (Objects.isNull(body)) {
+            return;
+        }
+        String[] ids = body.toString().split(SEPARATOR);
+        try {
+            long userId = Long.parseLong(ids[1]);
+            filters.asMap().computeIfPresent(Long.valueOf(ids[0]), (blogId, bloom) -> {
+                bloom.put(userId);
+                return bloom;
+            });
+        } catch (RuntimeException e) {
+            log.error("【点赞者过滤器】通知格式错误：{}", body);
+        }
+    }
+
+    /**
+     * 由点赞者 hash 构建过滤器：hash 尚未加载（没有已加载标记）时不构建，由精确查询负责加载
+     */
+    private Bloom load(Long blogId) {
+        Set<Object> fields = redisTemplate.opsForHash().keys(BlogCacheUtil.generateKey(CacheConstant.VOTER, blogId));
+        if (Objects.isNull(fields)) {
+            return null;
+        }
+        List<Long> userIds = fields.stream().filter(field -> field instanceof Number)
+                .map(field -> ((Number) field).longValue()).collect(Collectors.toList());
+        if (!userIds.remove(VOTER_LOADED)) {
+            return null;
+        }
+        Bloom bloom = new Bloom(Math.max(minInsertions, userIds.size() << 1), fpp);
+        userIds.forEach(bloom::put);
+        return bloom;
+    }
+
+    /**
+     * 布隆过滤器：位数组为 AtomicLongArray，允许通知线程写入的同时被读取
+     * 位数 m = -n * ln(p) / (ln2)^2，哈希函数个数 k = m / n * ln2，k 个哈希值由 两个哈希值 组合得到
+     */
+    static final class Bloom {
+        private final AtomicLongArray bits;
+        private final long bitSize;
+        private final int hashFunctions;
+
+        Bloom(int expectedInsertions, double fpp) {
+            long m = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) Math.max(1, (m + 63) >>> 6));
+            this.bitSize = (long) bits.length() << 6;
+            this.hashFunctions = Math.max(1, (int) Math.round((double) m / expectedInsertions * Math.log(2)));
+        }
+
+        void put(long userId) {
+            long hash = mix(userId);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashFunctions; i++) {
+                long index = index(hash1 + i * hash2);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long current;
+                while (((current = bits.get(word)) & mask) == 0) {
+                    if (bits.compareAndSet(word, current, current | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean mightContain(long userId) {
+            long hash = mix(userId);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashFunctions; i++) {
+                long index = index(hash1 + i * hash2);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int bytes() {
+            return bits.length() << 3;
+        }
+
+        private long index(int combined) {
+            return (combined < 0 ? ~combined : combined) % bitSize;
+        }
+
+        /**
+         * userId 是连续的整数，先打散（murmur3 fmix64）
+         */
+        private static long mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            key *= 0xc4ceb9fe1a85ec53L;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
+}
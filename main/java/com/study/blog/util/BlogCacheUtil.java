@@ -17,12 +17,16 @@ public class BlogCacheUtil {
         return String.valueOf(id1) + ":" + id2;
     }
 
+    /**
+     * KEY:{id}：id 作为 hash tag，同一个博客的 key（空数据标记、缓存、指标量、评论、点赞 ...）位于同一个 slot，
+     * 集群模式下可以在同一个 lua 脚本中访问
+     */
     public static String generateKey(String key, Long id2) {
         if (Objects.isNull(key) || Objects.isNull(id2)) {
             // todo id为null 抛出异常
             log.error("【 生成 key 】 id 为 null ！");
         }
-        return String.valueOf(key) + ":" + id2;
+        return String.valueOf(key) + ":{" + id2 + "}";
     }
 
     public static String generateKey(String key, Integer id2) {
@@ -30,6 +34,6 @@ public class BlogCacheUtil {
             // todo id为null 抛出异常
             log.error("【 生成 key 】 id 为 null ！");
         }
-        return String.valueOf(key) + ":" + id2;
+        return String.valueOf(key) + ":{" + id2 + "}";
     }
 }
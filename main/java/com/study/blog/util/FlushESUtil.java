@@ -1,18 +1,11 @@
 package com.study.blog.util;
 
-import com.study.blog.entity.Blog;
-import com.study.blog.entity.EsBlog;
-import com.study.blog.entity.User;
-import com.study.blog.repository.es2search.EsBlogRepository;
-import com.study.blog.service.BlogService;
-import com.study.blog.service.UserService;
+import com.study.blog.service.impl.EsReindexer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * @author 10652
@@ -20,38 +13,26 @@ import java.util.stream.Collectors;
 @Component
 @Slf4j
 public class FlushESUtil {
-    private static BlogService blogService;
-    private static UserService userService;
-    private static EsBlogRepository esBlogRepository;
-    private final EsBlogRepository EsBlogRepositoryTemp;
-    private final BlogService serviceTemp;
-    private final UserService userServiceTemp;
+    private static EsReindexer esReindexer;
+    private final EsReindexer esReindexerTemp;
 
 
     @Autowired
-    public FlushESUtil(EsBlogRepository esBlogRepository, BlogService blogService, UserService userService) {
-        this.EsBlogRepositoryTemp = esBlogRepository;
-        this.serviceTemp = blogService;
-        this.userServiceTemp = userService;
+    public FlushESUtil(EsReindexer esReindexer) {
+        this.esReindexerTemp = esReindexer;
     }
 
     /**
-     * 系统启动时将 数据库中的 博客 刷新到 ES 中
+     * 将 数据库中的 博客 刷新到 ES 中：重建索引后通过别名切换，见 EsReindexer
      */
     public static void flushESByMySQL() {
-        List<Blog> blogList = blogService.listAllBlog();
-        List<EsBlog> esBlogList = blogList.stream().map((blog -> {
-            User user = userService.searchById(blog.getUserId());
-            return new EsBlog(blog, user);
-        })).collect(Collectors.toList());
-        esBlogRepository.saveAll(esBlogList);
+        String index = esReindexer.reindex();
+        log.info("【刷新 ES】博客已写入 {}", index);
     }
 
     @PostConstruct
     public void init() {
-        blogService = serviceTemp;
-        userService = userServiceTemp;
-        esBlogRepository = EsBlogRepositoryTemp;
+        esReindexer = esReindexerTemp;
     }
 
 }
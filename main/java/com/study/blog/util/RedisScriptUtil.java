@@ -0,0 +1,27 @@
+package com.study.blog.util;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+/**
+ * 加载 lua 脚本：脚本应作为静态常量只加载一次（DefaultRedisScript 会缓存 sha1，优先使用 EVALSHA）
+ *
+ * @author 10652
+ */
+public class RedisScriptUtil {
+    private RedisScriptUtil() {
+    }
+
+    /**
+     * @param location   classpath 下的脚本路径，如 lua/unlock.lua
+     * @param resultType 返回值类型
+     * @param <T>        返回值类型
+     * @return redisScript
+     */
+    public static <T> DefaultRedisScript<T> load(String location, Class<T> resultType) {
+        DefaultRedisScript<T> redisScript = new DefaultRedisScript<>();
+        redisScript.setLocation(new ClassPathResource(location));
+        redisScript.setResultType(resultType);
+        return redisScript;
+    }
+}
@@ -0,0 +1,60 @@
+package com.study.blog.util;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求截止时间：由 RequestDeadlineInterceptor 在请求开始时设置，请求结束时清除
+ * <p>
+ * 限流锁中的所有等待（阻塞等待缓存、等待许可证、等待其他节点刷新缓存）都不应超过请求剩余的时间预算，
+ * 否则即使等到了结果，客户端也早已放弃，只是白白占用 Tomcat 工作线程
+ *
+ * @author 10652
+ */
+public class RequestDeadline {
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * 设置截止时间
+     *
+     * @param budgetMillis 请求的时间预算（毫秒）
+     */
+    public static void start(long budgetMillis) {
+        DEADLINE.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    /**
+     * 清除截止时间
+     */
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    /**
+     * 剩余时间（纳秒）：min(请求剩余时间, cap)
+     * 当前线程没有截止时间（如定时任务）：返回 cap
+     *
+     * @param capNanos 最多等待的时间（纳秒）
+     * @return 剩余时间，小于等于 0 表示已超时
+     */
+    public static long remainingNanos(long capNanos) {
+        Long deadline = DEADLINE.get();
+        if (Objects.isNull(deadline)) {
+            return capNanos;
+        }
+        return Math.min(capNanos, deadline - System.nanoTime());
+    }
+
+    /**
+     * 剩余时间（毫秒）：min(请求剩余时间, cap)
+     *
+     * @param capMillis 最多等待的时间（毫秒）
+     * @return 剩余时间，小于等于 0 表示已超时
+     */
+    public static long remainingMillis(long capMillis) {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos(TimeUnit.MILLISECONDS.toNanos(capMillis)));
+    }
+}
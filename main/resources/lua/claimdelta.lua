@@ -0,0 +1,31 @@
+-- KEYS[1]：指标量 hash（EVAL:{blogId}）
+-- ARGV[1]：runId，ARGV[2]：当前时间（ms），ARGV[3]：租期（ms）
+-- 将上次写入数据库之后的增量转入刷新中的 field（f 开头；flush 为 runId，fat 为转入时间），
+-- 写入数据库成功之后才删除（commitdelta.lua），失败时加回（restoredelta.lua）
+-- （1）其他刷新正在处理该博客（flush 存在且未超过租期）：不转入，返回 {-1, ...}
+-- （2）flush 已超过租期（该刷新已崩溃）：遗留的增量与本次增量合并，由本次刷新写入
+-- 返回 {abs, 阅读量增量, 评论量增量, 点赞量增量, 阅读量, 评论量, 点赞量}：
+-- abs 为 1 时应整体覆盖（使用后三项，-1 表示不存在）
+local flush=redis.call('hmget',KEYS[1],'flush','fat')
+if(flush[1] and tonumber(ARGV[2])-tonumber(flush[2])<tonumber(ARGV[3]))
+then
+    return {-1,0,0,0,-1,-1,-1}
+end
+local v=redis.call('hmget',KEYS[1],'abs','dread','dcomment','dvote','fabs','fread','fcomment','fvote',
+    'read','comment','vote')
+local result={math.max(tonumber(v[1]) or 0,tonumber(v[5]) or 0)}
+for i=2,4 do
+    result[i]=(tonumber(v[i]) or 0)+(tonumber(v[i+4]) or 0)
+end
+for i=5,7 do
+    result[i]=tonumber(v[i+4]) or -1
+end
+redis.call('hdel',KEYS[1],'abs','dread','dcomment','dvote')
+if(result[1]==0 and result[2]==0 and result[3]==0 and result[4]==0)
+then
+    redis.call('hdel',KEYS[1],'flush','fat','fabs','fread','fcomment','fvote')
+    return result
+end
+redis.call('hmset',KEYS[1],'flush',ARGV[1],'fat',ARGV[2],'fabs',result[1],'fread',result[2],
+    'fcomment',result[3],'fvote',result[4])
+return result
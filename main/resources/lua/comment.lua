@@ -0,0 +1,38 @@
+-- KEYS[1]：空数据标记，KEYS[2]：评论 hash（EVALUATION_COMMENT:{blogId}），KEYS[3]：指标量 hash（EVAL:{blogId}）
+-- KEYS[4]：评论索引（COMMENT_INDEX:{blogId}）
+-- ARGV[1]：commentId，ARGV[2]：评论（新增时），ARGV[3]：1 新增 / -1 删除，ARGV[4]：发表时间（评论索引的 score）
+-- 只访问该博客的 key（同一个 slot）：待刷新集合、待持久化的评论集合由调用者在成功之后记录
+-- 返回 {状态, 评论量}：状态 1 成功，0 重复操作（评论已存在 / 已删除），-1 索引未建立，-2 指标量未加载，-3 空数据
+if(redis.call('exists',KEYS[1])==1)
+then
+    return {-3,0}
+end
+local count=redis.call('hget',KEYS[3],'comment')
+if(not count)
+then
+    return {-2,0}
+end
+if(redis.call('exists',KEYS[4])==0 and redis.call('hlen',KEYS[2])>0)
+then
+    return {-1,0}
+end
+local changed
+if(ARGV[3]=='1')
+then
+    changed=redis.call('hsetnx',KEYS[2],ARGV[1],ARGV[2])
+else
+    changed=redis.call('hdel',KEYS[2],ARGV[1])
+end
+if(changed==0)
+then
+    return {0,tonumber(count)}
+end
+if(ARGV[3]=='1')
+then
+    redis.call('zadd',KEYS[4],ARGV[4],ARGV[1])
+else
+    redis.call('zrem',KEYS[4],ARGV[1])
+end
+count=redis.call('hincrby',KEYS[3],'comment',ARGV[3])
+redis.call('hincrby',KEYS[3],'dcomment',ARGV[3])
+return {1,count}
@@ -0,0 +1,38 @@
+-- KEYS[1]：评论 hash（EVALUATION_COMMENT:{blogId}），KEYS[2]：评论索引（COMMENT_INDEX:{blogId}）
+-- 由评论 hash 建立评论索引：读取评论与写入索引在同一个脚本中，期间新增 / 删除的评论不会遗漏或残留
+-- 评论为 JSON（createTime 为毫秒数）；score 与 comment.lua 相同：发表时间，没有发表时间时为 0
+-- 返回写入索引的评论数：索引已存在时返回 -1（已由其他请求建立）
+if(redis.call('exists',KEYS[2])==1)
+then
+    return -1
+end
+local entries=redis.call('hgetall',KEYS[1])
+local args={}
+local count=0
+for i=1,#entries,2
+do
+    local comment=cjson.decode(entries[i+1])
+    if(type(comment)=='string')
+    then
+        comment=cjson.decode(comment)
+    end
+    local score=0
+    if(type(comment)=='table' and type(comment['createTime'])=='number')
+    then
+        score=comment['createTime']
+    end
+    args[#args+1]=string.format('%d',score)
+    args[#args+1]=entries[i]
+    count=count+1
+    -- 分批 zadd：unpack 的参数个数有上限
+    if(#args>=1000)
+    then
+        redis.call('zadd',KEYS[2],unpack(args))
+        args={}
+    end
+end
+if(#args>0)
+then
+    redis.call('zadd',KEYS[2],unpack(args))
+end
+return count
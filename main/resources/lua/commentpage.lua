@@ -0,0 +1,63 @@
+-- KEYS[1]：空数据标记，KEYS[2]：评论索引（COMMENT_INDEX:{blogId}），KEYS[3]：评论 hash，KEYS[4]：指标量 hash
+-- ARGV[1]：游标 score（上一页最后一条评论的发表时间），ARGV[2]：游标 commentId，ARGV[3]：本页条数
+-- 按 (score, commentId) 排序：同一 score 的成员按字节序排列
+-- 游标仍在索引中时，本页从游标的排名之后开始；游标已被删除时，在同一 score 的成员中二分查找第一个大于游标的成员，
+-- 开销为 O(log N) 而不是扫描同一 score 的所有成员
+-- 返回 {状态, 第一条评论的排名, commentId, score, 评论, ...}：状态 1 成功，-1 索引未建立，-2 指标量未加载，-3 空数据
+if(redis.call('exists',KEYS[1])==1)
+then
+    return {-3,0}
+end
+if(redis.call('hexists',KEYS[4],'comment')==0)
+then
+    return {-2,0}
+end
+if(redis.call('exists',KEYS[2])==0)
+then
+    if(redis.call('hlen',KEYS[3])>0)
+    then
+        return {-1,0}
+    end
+    return {1,0}
+end
+local limit=tonumber(ARGV[3])
+local start
+local cursorScore=redis.call('zscore',KEYS[2],ARGV[2])
+if(cursorScore and tonumber(cursorScore)==tonumber(ARGV[1]))
+then
+    start=redis.call('zrank',KEYS[2],ARGV[2])+1
+else
+    -- 同一 score 的成员的排名为 [low, high)
+    local low=redis.call('zcount',KEYS[2],'-inf','('..ARGV[1])
+    local high=low+redis.call('zcount',KEYS[2],ARGV[1],ARGV[1])
+    while(low<high)
+    do
+        local middle=math.floor((low+high)/2)
+        if(redis.call('zrange',KEYS[2],middle,middle)[1]>ARGV[2])
+        then
+            high=middle
+        else
+            low=middle+1
+        end
+    end
+    start=low
+end
+local entries=redis.call('zrange',KEYS[2],start,start+limit-1,'withscores')
+if(#entries==0)
+then
+    return {1,0}
+end
+local page={}
+for i=1,#entries,2
+do
+    page[#page+1]=entries[i]
+end
+local result={1,start}
+local bodies=redis.call('hmget',KEYS[3],unpack(page))
+for i,member in ipairs(page)
+do
+    result[#result+1]=member
+    result[#result+1]=entries[i*2]
+    result[#result+1]=bodies[i]
+end
+return result
@@ -0,0 +1,8 @@
+-- KEYS[1]：指标量 hash（EVAL:{blogId}），ARGV[1]：runId
+-- 写入数据库成功：删除本次刷新转入的增量（超过租期、已被其他刷新接管时不删除）
+if(redis.call('hget',KEYS[1],'flush')==ARGV[1])
+then
+    redis.call('hdel',KEYS[1],'flush','fat','fabs','fread','fcomment','fvote')
+    return 1
+end
+return 0
@@ -0,0 +1,13 @@
+-- KEYS[1]：指标量 hash（EVAL:{blogId}）
+-- ARGV[1]：指标（1 阅读量，2 评论量，3 点赞量），ARGV[2]：增量
+-- 同时累加 d 开头的增量 field（上次写入数据库之后的增量），返回自增后的值；待刷新集合由调用者在脚本之外记录
+-- 指标量不存在（尚未加载 / 已被淘汰）时不自增，返回 nil：否则会留下只有增量的不完整 hash，由调用者稍后重试
+local fields={'read','comment','vote'}
+local index=tonumber(ARGV[1])
+if(redis.call('hexists',KEYS[1],fields[index])==0)
+then
+    return false
+end
+local count=redis.call('hincrby',KEYS[1],fields[index],ARGV[2])
+redis.call('hincrby',KEYS[1],'d'..fields[index],ARGV[2])
+return count
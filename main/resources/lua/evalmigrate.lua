@@ -0,0 +1,50 @@
+-- 旧数据 -> 指标量 hash（EVAL:{blogId}）：只访问指标量 hash，旧数据由调用者取出（集群模式下不跨 slot）
+-- KEYS[1]：指标量 hash
+-- ARGV[1]~ARGV[3]：旧的 阅读量、评论量、点赞量（-1 表示不存在）
+-- ARGV[4]~ARGV[6]：旧数据尚未写入数据库的增量，ARGV[7]：1 表示增量未知（旧的全局 hash / 旧 hash 带有 abs 标记）
+-- （1）增量已知：新 hash 中已有该指标时累加增量，否则写入旧值（-1 时只记录增量）；增量同时记入 d 开头的 field
+-- （2）增量未知：取 新值 与 旧值 + 新 hash 的增量 中较大的一个，并写入 abs 标记（下次刷新时整体覆盖一次）
+-- 新 hash 中缺少的指标由从数据库加载时补齐（evalput.lua 不覆盖已有的 field）
+-- 返回 1：已合并，0：没有旧数据
+local fields={'read','comment','vote'}
+local unknown=tonumber(ARGV[7])==1
+local merged=0
+for i=1,3
+do
+    local old=tonumber(ARGV[i])
+    local delta=tonumber(ARGV[i+3])
+    local current=redis.call('hget',KEYS[1],fields[i])
+    if(unknown)
+    then
+        if(old>=0)
+        then
+            if(current)
+            then
+                old=math.max(tonumber(current),old+(tonumber(redis.call('hget',KEYS[1],'d'..fields[i])) or 0))
+            end
+            redis.call('hset',KEYS[1],fields[i],old)
+            merged=1
+        end
+    else
+        if(current)
+        then
+            redis.call('hincrby',KEYS[1],fields[i],delta)
+        elseif(old>=0)
+        then
+            redis.call('hset',KEYS[1],fields[i],old)
+        end
+        if(delta~=0)
+        then
+            redis.call('hincrby',KEYS[1],'d'..fields[i],delta)
+        end
+        if(old>=0 or delta~=0)
+        then
+            merged=1
+        end
+    end
+end
+if(unknown and merged==1)
+then
+    redis.call('hset',KEYS[1],'abs',1)
+end
+return merged
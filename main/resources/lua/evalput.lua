@@ -0,0 +1,7 @@
+-- KEYS[1]：指标量 hash（EVAL:{blogId}）
+-- ARGV[1]：阅读量，ARGV[2]：评论量，ARGV[3]：点赞量
+-- 只补齐不存在的 field：已有的值（迁移来的旧数据、并发加载期间的自增）比数据库中的值新
+redis.call('hsetnx',KEYS[1],'read',ARGV[1])
+redis.call('hsetnx',KEYS[1],'comment',ARGV[2])
+redis.call('hsetnx',KEYS[1],'vote',ARGV[3])
+return 1
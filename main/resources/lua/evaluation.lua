@@ -0,0 +1,21 @@
+-- KEYS[1]：空数据标记，KEYS[2]：指标量 hash（EVAL:{blogId}）
+-- 阅读量自增时，同时累加 dread（上次写入数据库之后的增量）；待刷新集合由调用者在脚本之外记录（不在同一个 slot）
+-- ARGV[1]：阅读量增量（0 表示只读取），ARGV[2]：空数据标记过期时长（ms）
+-- 返回 {状态, 阅读量, 评论量, 点赞量}：状态 -1 空数据，0 无缓存，1 命中
+if(redis.call('exists',KEYS[1])==1)
+then
+    redis.call('pexpire',KEYS[1],ARGV[2])
+    return {-1,0,0,0}
+end
+local counts=redis.call('hmget',KEYS[2],'read','comment','vote')
+if(not counts[1] or not counts[2] or not counts[3])
+then
+    return {0,0,0,0}
+end
+local delta=tonumber(ARGV[1])
+if(delta~=0)
+then
+    counts[1]=redis.call('hincrby',KEYS[2],'read',delta)
+    redis.call('hincrby',KEYS[2],'dread',delta)
+end
+return {1,tonumber(counts[1]),tonumber(counts[2]),tonumber(counts[3])}
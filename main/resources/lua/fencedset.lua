@@ -0,0 +1,13 @@
+-- KEYS[1]：缓存 key，KEYS[2]：已写入的最大 fencing token，KEYS[3]：fencing token 计数器
+-- ARGV[1]：缓存值，ARGV[2]：fencing token，ARGV[3]：缓存过期时长（ms），ARGV[4]：token 记录过期时长（ms）
+-- 写入时同时续期计数器：计数器与最大 token 始终一起过期
+local last=tonumber(redis.call('get',KEYS[2]) or '0')
+local token=tonumber(ARGV[2])
+if(token<last)
+then
+    return 0
+end
+redis.call('set',KEYS[2],ARGV[2],'PX',ARGV[4])
+redis.call('pexpire',KEYS[3],ARGV[4])
+redis.call('set',KEYS[1],ARGV[1],'PX',ARGV[3])
+return 1
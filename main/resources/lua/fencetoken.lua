@@ -0,0 +1,15 @@
+-- KEYS[1]：fencing token 计数器，KEYS[2]：已写入的最大 fencing token，ARGV[1]：过期时长（ms）
+-- 计数器与最大 token 一起续期：计数器不会先于最大 token 过期，否则重新从 1 开始的 token 都会被判定为过期
+-- 计数器不存在（如 Redis 重启）时，从已写入的最大 token 继续递增
+if(redis.call('exists',KEYS[1])==0)
+then
+    local last=redis.call('get',KEYS[2])
+    if(last)
+    then
+        redis.call('set',KEYS[1],last)
+    end
+end
+local token=redis.call('incr',KEYS[1])
+redis.call('pexpire',KEYS[1],ARGV[1])
+redis.call('pexpire',KEYS[2],ARGV[1])
+return token
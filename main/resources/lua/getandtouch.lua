@@ -0,0 +1,14 @@
+-- KEYS[1]：空数据标记，KEYS[2]：缓存 key
+-- ARGV[1]：空数据标记过期时长（ms），ARGV[2]：缓存过期时长（ms），ARGV[3]：剩余过期时长低于该值（ms）时才续期
+-- 空数据标记存在：续期并返回标记；否则返回缓存（剩余过期时长仍然充足时，不续期）
+if(redis.call('exists',KEYS[1])==1)
+then
+    redis.call('pexpire',KEYS[1],ARGV[1])
+    return redis.call('get',KEYS[1])
+end
+local value=redis.call('get',KEYS[2])
+if(value and redis.call('pttl',KEYS[2])<tonumber(ARGV[3]))
+then
+    redis.call('pexpire',KEYS[2],ARGV[2])
+end
+return value
@@ -0,0 +1,9 @@
+-- KEYS[1]：hash，ARGV[1]：field
+-- 取走（读取并删除）field：多个节点同时执行时只有一个节点取到；不存在时返回 nil
+local value=redis.call('hget',KEYS[1],ARGV[1])
+if(not value)
+then
+    return false
+end
+redis.call('hdel',KEYS[1],ARGV[1])
+return tonumber(value)
@@ -1,8 +1,18 @@
-local arrys=redis.call('hgetall',KEYS[1])
-for k,v in pairs(arrys) do
-    if(string.find(v,ARGV[1])~= nil)
-        then
-            return arrys[k-1]
-    end
+-- KEYS[1]：空数据标记，KEYS[2]：点赞者 hash（VOTER:{blogId}：userId -> voteId，字段 0 为已加载标记）
+-- ARGV[1]：userId，ARGV[2]：空数据标记过期时长（ms）
+-- 返回：voteId 已点赞，0 未点赞，-1 点赞者尚未加载，-2 空数据
+if(redis.call('exists',KEYS[1])==1)
+then
+    redis.call('pexpire',KEYS[1],ARGV[2])
+    return -2
 end
-return 0
+local voted=redis.call('hmget',KEYS[2],ARGV[1],'0')
+if(voted[1])
+then
+    return tonumber(voted[1])
+end
+if(voted[2])
+then
+    return 0
+end
+return -1
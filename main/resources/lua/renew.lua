@@ -0,0 +1,8 @@
+local key=KEYS[1]
+local arg=ARGV[1]
+local value=redis.call('get',key)
+if(value==arg)
+then
+    return redis.call('pexpire',key,ARGV[2])
+end
+return 0
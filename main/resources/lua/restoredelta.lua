@@ -0,0 +1,13 @@
+-- KEYS[1]：指标量 hash（EVAL:{blogId}），ARGV[1]：runId
+-- 写入数据库失败：将本次刷新转入的增量（以及 abs 标记）加回 d 开头的 field，下次刷新重试（由调用者重新记入待刷新集合）
+if(redis.call('hget',KEYS[1],'flush')~=ARGV[1])
+then
+    return 0
+end
+local v=redis.call('hmget',KEYS[1],'fabs','fread','fcomment','fvote')
+if(tonumber(v[1])==1) then redis.call('hset',KEYS[1],'abs',1) end
+if((tonumber(v[2]) or 0)~=0) then redis.call('hincrby',KEYS[1],'dread',v[2]) end
+if((tonumber(v[3]) or 0)~=0) then redis.call('hincrby',KEYS[1],'dcomment',v[3]) end
+if((tonumber(v[4]) or 0)~=0) then redis.call('hincrby',KEYS[1],'dvote',v[4]) end
+redis.call('hdel',KEYS[1],'flush','fat','fabs','fread','fcomment','fvote')
+return 1
@@ -0,0 +1,10 @@
+-- KEYS[1]：id 计数器，ARGV[1]：下限（数据库中已存在的最大 id）
+-- 计数器小于下限时，设置为下限：之后 INCR 得到的 id 不会与数据库中的 id 冲突；返回计数器的值
+local current=tonumber(redis.call('get',KEYS[1]) or '0')
+local floor=tonumber(ARGV[1])
+if(current<floor)
+then
+    redis.call('set',KEYS[1],floor)
+    return floor
+end
+return current
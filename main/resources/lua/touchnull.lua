@@ -0,0 +1,8 @@
+-- KEYS[1]：空数据标记，ARGV[1]：过期时长（ms）
+-- 标记存在：续期并返回 1；否则返回 0
+if(redis.call('exists',KEYS[1])==1)
+then
+    redis.call('pexpire',KEYS[1],ARGV[1])
+    return 1
+end
+return 0
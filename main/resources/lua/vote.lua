@@ -0,0 +1,42 @@
+-- KEYS[1]：空数据标记，KEYS[2]：点赞者 hash（VOTER:{blogId}），KEYS[3]：指标量 hash（EVAL:{blogId}）
+-- KEYS[4]：点赞 hash（EVALUATION_VOTE:{blogId}）
+-- ARGV[1]：userId，ARGV[2]：blogId，ARGV[3]：1 点赞 / -1 取消点赞
+-- ARGV[4]：点赞时使用的 voteId（由 IDService 预先分配，重复点赞时不使用）
+-- 只访问该博客的 key（同一个 slot）：待刷新集合、待持久化的点赞集合由调用者在成功之后记录
+-- 返回 {状态, voteId, 点赞量}：状态 1 成功，0 重复操作（已点赞 / 未点赞），-1 点赞者未加载，-2 指标量未加载，-3 空数据
+if(redis.call('exists',KEYS[1])==1)
+then
+    return {-3,0,0}
+end
+if(redis.call('hexists',KEYS[2],'0')==0)
+then
+    return {-1,0,0}
+end
+local count=redis.call('hget',KEYS[3],'vote')
+if(not count)
+then
+    return {-2,0,0}
+end
+local voteId=redis.call('hget',KEYS[2],ARGV[1])
+if(ARGV[3]=='1')
+then
+    if(voteId)
+    then
+        return {0,tonumber(voteId),tonumber(count)}
+    end
+    voteId=ARGV[4]
+    redis.call('hset',KEYS[2],ARGV[1],voteId)
+    redis.call('hset',KEYS[4],voteId,'{"blogId":'..ARGV[2]..',"id":'..voteId..',"userId":'..ARGV[1]..'}')
+    count=redis.call('hincrby',KEYS[3],'vote',1)
+    redis.call('hincrby',KEYS[3],'dvote',1)
+else
+    if(not voteId)
+    then
+        return {0,0,tonumber(count)}
+    end
+    redis.call('hdel',KEYS[2],ARGV[1])
+    redis.call('hdel',KEYS[4],voteId)
+    count=redis.call('hincrby',KEYS[3],'vote',-1)
+    redis.call('hincrby',KEYS[3],'dvote',-1)
+end
+return {1,tonumber(voteId),count}
@@ -0,0 +1,15 @@
+-- KEYS[1]：点赞者 hash（VOTER:{blogId}：userId -> voteId，字段 0 为已加载标记）
+-- ARGV：userId1, voteId1, userId2, voteId2, ...（数据库中的点赞）
+-- 已加载时不覆盖：点赞者 hash 中可能有尚未写入数据库的点赞 / 取消点赞（vote.lua）
+-- 检查已加载标记 与 写入在同一个脚本中：两个节点同时加载时，后到的不会以旧快照覆盖期间的取消点赞
+-- 返回：1 已写入，0 已加载（未写入）
+if(redis.call('hexists',KEYS[1],'0')==1)
+then
+    return 0
+end
+for i=1,#ARGV,2
+do
+    redis.call('hset',KEYS[1],ARGV[i],ARGV[i+1])
+end
+redis.call('hset',KEYS[1],'0','0')
+return 1
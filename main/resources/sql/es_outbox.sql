@@ -0,0 +1,19 @@
+-- 博客同步到 ES 的 outbox：与博客的新增、修改、删除在同一个事务中写入，由 EsOutboxDispatcher 批量同步到 ES
+-- 只记录发生变化的 blogId：同步时按数据库中博客的当前状态写入（存在则写入，不存在则删除），重复同步是幂等的
+CREATE TABLE IF NOT EXISTS es_outbox
+(
+    id          BIGINT   NOT NULL AUTO_INCREMENT,
+    blog_id     BIGINT   NOT NULL,
+    attempts    INT      NOT NULL DEFAULT 0 COMMENT '同步失败的次数',
+    dead        TINYINT  NOT NULL DEFAULT 0 COMMENT '死信：失败次数达到上限，不再同步',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id),
+    KEY idx_dead_id (dead, id)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
+
+-- 已有的表：增加死信状态
+-- ALTER TABLE es_outbox
+--     ADD COLUMN dead TINYINT NOT NULL DEFAULT 0 COMMENT '死信：失败次数达到上限，不再同步' AFTER attempts,
+--     DROP KEY idx_attempts_id,
+--     ADD KEY idx_dead_id (dead, id);
@@ -35,13 +35,18 @@ $(function () {
         });
     });
 
-    // 获取评论列表
-    function getComment(blogId) {
+    // 获取评论列表：cursor 为空时获取第一页，否则将下一页追加到列表末尾
+    function getComment(blogId, cursor) {
         $.ajax({
             url: '/comments',
             type: 'GET',
-            data: {"blogId": blogId},
+            data: cursor ? {"blogId": blogId, "cursor": cursor} : {"blogId": blogId},
             success: function (data) {
+                if (cursor) {
+                    $('#moreComments').remove();
+                    $('#commentList').append($(data).children());
+                    return;
+                }
                 /*将返回值传递到指定 id 的 div 页面中进行渲染*/
                 $('#mainContainer').html(data);
             },
@@ -87,6 +92,11 @@ $(function () {
         });
     });
 
+    // 加载更多评论
+    $(".blog-content-container").on("click", "#moreComments", function () {
+        getComment(blogId, $(this).attr("cursor"));
+    });
+
     // 处理评论删除事件
     $(".blog-content-container").on("click", ".blog-delete-comment", function () {
         $.ajax({
@@ -0,0 +1,93 @@
+package com.study.blog.lock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AimdConcurrencyLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private AimdConcurrencyLimiter newLimiter(int initialLimit) {
+        return new AimdConcurrencyLimiter(initialLimit, 2, 10, 2.0, 0.5, 100);
+    }
+
+    @Test
+    public void rejectsImmediatelyAtLimit() {
+        AimdConcurrencyLimiter limiter = newLimiter(2);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(2, limiter.getInFlight());
+        Assert.assertEquals(1, limiter.getRejected());
+        limiter.onSuccess(FAST);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void increasesWhileLatencyStaysAtBaseline() {
+        AimdConcurrencyLimiter limiter = newLimiter(4);
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < limiter.getLimit(); j++) {
+                limiter.tryAcquire();
+            }
+            while (limiter.getInFlight() > 0) {
+                limiter.onSuccess(FAST);
+            }
+        }
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void decreasesWhenLatencyRisesOrDropped() throws InterruptedException {
+        AimdConcurrencyLimiter limiter = newLimiter(8);
+        limiter.tryAcquire();
+        limiter.onSuccess(FAST);
+        limiter.tryAcquire();
+        limiter.onSuccess(SLOW);
+        Assert.assertEquals(4, limiter.getLimit());
+        TimeUnit.NANOSECONDS.sleep(FAST * 2);
+        limiter.tryAcquire();
+        limiter.onDropped();
+        Assert.assertEquals(2, limiter.getLimit());
+        TimeUnit.NANOSECONDS.sleep(FAST * 2);
+        limiter.tryAcquire();
+        limiter.onDropped();
+        Assert.assertEquals(2, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void backsOffOncePerRoundTrip() {
+        AimdConcurrencyLimiter limiter = newLimiter(8);
+        limiter.tryAcquire();
+        limiter.onSuccess(FAST);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire();
+        }
+        for (int i = 0; i < 5; i++) {
+            limiter.onSuccess(SLOW);
+        }
+        limiter.tryAcquire();
+        limiter.onDropped();
+        Assert.assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void baselineRisesSlowlyUnderSustainedOverload() throws InterruptedException {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(8, 2, 10, 2.0, 0.5, 2);
+        limiter.tryAcquire();
+        limiter.onSuccess(FAST);
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+            limiter.onSuccess(SLOW);
+        }
+        Assert.assertEquals(4, limiter.getLimit());
+        // 两个窗口的最小耗时都是 SLOW，基准耗时仍远小于 SLOW / 2：下一个 RTT 的慢请求仍被判定为排队
+        TimeUnit.NANOSECONDS.sleep(SLOW * 2);
+        limiter.tryAcquire();
+        limiter.onSuccess(SLOW);
+        Assert.assertEquals(2, limiter.getLimit());
+    }
+}
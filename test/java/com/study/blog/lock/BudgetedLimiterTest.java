@@ -0,0 +1,34 @@
+package com.study.blog.lock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class BudgetedLimiterTest {
+
+    @Test
+    public void globalBudgetIsSharedAcrossDomains() throws Exception {
+        ConcurrencyLimiter global = new SemaphoreLimiter(2, 0, 0, TimeUnit.MILLISECONDS);
+        BudgetedLimiter blog = new BudgetedLimiter(new SemaphoreLimiter(2, 0, 0, TimeUnit.MILLISECONDS), global);
+        BudgetedLimiter evaluation = new BudgetedLimiter(new SemaphoreLimiter(2, 0, 0, TimeUnit.MILLISECONDS),
+                global);
+        Assert.assertTrue(blog.tryAcquire());
+        Assert.assertTrue(evaluation.tryAcquire());
+        Assert.assertFalse(blog.tryAcquire());
+        // 全局预算拒绝：归还子预算
+        Assert.assertEquals(1, blog.getInFlight());
+        evaluation.onSuccess(1L);
+        Assert.assertTrue(blog.tryAcquire());
+        Assert.assertEquals(2, global.getInFlight());
+    }
+
+    @Test
+    public void domainBudgetCapsOneDomain() throws Exception {
+        ConcurrencyLimiter global = new SemaphoreLimiter(10, 0, 0, TimeUnit.MILLISECONDS);
+        BudgetedLimiter user = new BudgetedLimiter(new SemaphoreLimiter(1, 0, 0, TimeUnit.MILLISECONDS), global);
+        Assert.assertTrue(user.tryAcquire());
+        Assert.assertFalse(user.tryAcquire());
+        Assert.assertEquals(1, global.getInFlight());
+    }
+}
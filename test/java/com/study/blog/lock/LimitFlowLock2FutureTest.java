@@ -0,0 +1,149 @@
+package com.study.blog.lock;
+
+import com.study.blog.exception.LimitFlowException;
+import com.study.blog.util.RequestDeadline;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LimitFlowLock2FutureTest {
+
+    @Test
+    public void onlyOneThreadLoadsPerBlog() throws Exception {
+        LimitFlowLock2Future lock = new LimitFlowLock2Future();
+        int threads = 32;
+        AtomicInteger loadCount = new AtomicInteger(0);
+        AtomicBoolean cacheReady = new AtomicBoolean(false);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    if (lock.limitRequestPass(1L, () -> !cacheReady.get(), false)) {
+                        try {
+                            loadCount.incrementAndGet();
+                            TimeUnit.MILLISECONDS.sleep(50);
+                            cacheReady.set(true);
+                            lock.releasePermission();
+                        } finally {
+                            lock.releaseLock(1L);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assert.assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void waitersReceiveLoadedValue() throws Exception {
+        LimitFlowLock2Future lock = new LimitFlowLock2Future();
+        int threads = 32;
+        AtomicInteger loadCount = new AtomicInteger(0);
+        AtomicInteger cacheReadCount = new AtomicInteger(0);
+        Object loaded = new Object();
+        AtomicInteger sameInstance = new AtomicInteger(0);
+        AtomicBoolean cacheReady = new AtomicBoolean(false);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    Object value = lock.load(1L, () -> {
+                        cacheReadCount.incrementAndGet();
+                        return cacheReady.get() ? loaded : null;
+                    }, () -> {
+                        loadCount.incrementAndGet();
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        cacheReady.set(true);
+                        return loaded;
+                    });
+                    if (value == loaded) {
+                        sameInstance.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assert.assertEquals(1, loadCount.get());
+        Assert.assertEquals(threads, sameInstance.get());
+        Assert.assertTrue(cacheReadCount.get() < threads);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loaderExceptionIsRethrown() {
+        new LimitFlowLock2Future().load(1L, () -> null, () -> {
+            throw new IllegalStateException();
+        });
+    }
+
+    @Test
+    public void differentBlogsDoNotBlockEachOther() {
+        LimitFlowLock2Future lock = new LimitFlowLock2Future();
+        Assert.assertTrue(lock.tryLock(1L));
+        Assert.assertTrue(lock.tryLock(2L));
+        Assert.assertFalse(lock.tryLock(1L));
+        lock.unLock(1L);
+        Assert.assertTrue(lock.tryLock(1L));
+    }
+
+    @Test
+    public void waiterGivesUpWithinRequestBudgetAndFallsBackToStale() throws Exception {
+        LimitFlowLock2Future lock = new LimitFlowLock2Future();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> lock.load(1L, () -> null, () -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "fresh";
+        }));
+        holder.start();
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        RequestDeadline.start(100);
+        try {
+            long start = System.nanoTime();
+            try {
+                lock.load(1L, () -> null, () -> "fresh");
+                Assert.fail();
+            } catch (LimitFlowException e) {
+                Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            }
+            Assert.assertEquals("stale", lock.load(1L, () -> null, () -> "fresh", () -> "stale"));
+        } finally {
+            RequestDeadline.clear();
+            release.countDown();
+            holder.join();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.study.blog.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 限流锁基准测试：LimitFlowLock2Wait vs LimitFlowLock2Park（阻塞 / 自旋） vs LimitFlowLock2Future
+ * <p>
+ * 每次操作：按 Zipf 分布选取 blogId -> 查询模拟缓存 -> 缓存不存在时经过限流锁，由持有锁的线程执行模拟 loader
+ * （1）skew：Zipf 指数，0 为均匀分布，越大热点越集中
+ * （2）loaderMicros：模拟访问数据库的耗时
+ * （3）evictRate：每次操作后淘汰该 key 的概率，用于持续制造缓存未命中
+ * <p>
+ * 为了只比较锁本身，所有锁都使用足够大的 SemaphoreLimiter，不会出现限流拒绝
+ * LimitFlowLock2Future.load（阻塞线程直接取走结果，不再查询缓存）只有 future 实现，见 FutureLoad
+ * <p>
+ * 运行：main 方法依次以 1、8、32、128 个线程运行，结果（ops/ms 越大越好）用于选择
+ * BlogServiceImpl 与 BlogEvaluationCacheServiceImpl 使用的限流锁
+ *
+ * @author 10652
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LimitFlowLockBenchmark {
+    private static final Object VALUE = new Object();
+
+    @Param({"wait", "park", "park-spin", "future"})
+    public String lock;
+
+    @Param({"0.0", "0.99", "1.2"})
+    public double skew;
+
+    @Param({"0", "200", "2000"})
+    public long loaderMicros;
+
+    @Param({"0.01"})
+    public double evictRate;
+
+    @Param({"10000"})
+    public int keys;
+
+    private AbstractLimitFlowLock limitFlowLock;
+    private ConcurrentHashMap<Long, Object> cache;
+    private Zipf zipf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConcurrencyLimiter limiter = new SemaphoreLimiter(Integer.MAX_VALUE >> 1, Integer.MAX_VALUE, 1,
+                TimeUnit.MINUTES);
+        switch (lock) {
+            case "wait":
+                limitFlowLock = new LimitFlowLock2Wait("benchmark", limiter);
+                break;
+            case "future":
+                limitFlowLock = new LimitFlowLock2Future("benchmark", limiter);
+                break;
+            default:
+                limitFlowLock = new LimitFlowLock2Park("benchmark", limiter);
+                break;
+        }
+        cache = new ConcurrentHashMap<>(keys);
+        zipf = new Zipf(keys, skew);
+    }
+
+    @Benchmark
+    public Object limitRequestPass() {
+        Long blogId = zipf.next();
+        Object value = cache.get(blogId);
+        if (Objects.isNull(value)) {
+            if (limitFlowLock.limitRequestPass(blogId, () -> Objects.isNull(cache.get(blogId)),
+                    "park-spin".equals(lock))) {
+                try {
+                    value = fakeLoader(blogId);
+                    limitFlowLock.releasePermission();
+                } finally {
+                    limitFlowLock.releaseLock(blogId);
+                }
+            } else {
+                value = cache.get(blogId);
+            }
+        }
+        evict(blogId);
+        return value;
+    }
+
+    private Object fakeLoader(Long blogId) {
+        return fakeLoader(cache, blogId, loaderMicros);
+    }
+
+    private void evict(Long blogId) {
+        evict(cache, blogId, evictRate);
+    }
+
+    static Object fakeLoader(ConcurrentHashMap<Long, Object> cache, Long blogId, long loaderMicros) {
+        if (loaderMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(loaderMicros));
+        }
+        cache.put(blogId, VALUE);
+        return VALUE;
+    }
+
+    static void evict(ConcurrentHashMap<Long, Object> cache, Long blogId, double evictRate) {
+        if (ThreadLocalRandom.current().nextDouble() < evictRate) {
+            cache.remove(blogId);
+        }
+    }
+
+    /**
+     * LimitFlowLock2Future.load：只有 future 一种锁，单独一个 State，不与其他锁组合出无意义的结果
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public static class FutureLoad {
+        @Param({"0.0", "0.99", "1.2"})
+        public double skew;
+
+        @Param({"0", "200", "2000"})
+        public long loaderMicros;
+
+        @Param({"0.01"})
+        public double evictRate;
+
+        @Param({"10000"})
+        public int keys;
+
+        private LimitFlowLock2Future limitFlowLock;
+        private ConcurrentHashMap<Long, Object> cache;
+        private Zipf zipf;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            limitFlowLock = new LimitFlowLock2Future("benchmark", new SemaphoreLimiter(Integer.MAX_VALUE >> 1,
+                    Integer.MAX_VALUE, 1, TimeUnit.MINUTES));
+            cache = new ConcurrentHashMap<>(keys);
+            zipf = new Zipf(keys, skew);
+        }
+
+        @Benchmark
+        public Object futureLoad() {
+            Long blogId = zipf.next();
+            Object value = cache.get(blogId);
+            if (Objects.isNull(value)) {
+                value = limitFlowLock.load(blogId, () -> cache.get(blogId),
+                        () -> fakeLoader(cache, blogId, loaderMicros));
+            }
+            evict(cache, blogId, evictRate);
+            return value;
+        }
+    }
+
+    /**
+     * Zipf 分布：预先计算累积分布，二分查找采样
+     */
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, s);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        Long next() {
+            int index = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+            return (long) (index >= 0 ? index : Math.min(-index - 1, cdf.length - 1));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 8, 32, 128}) {
+            Options options = new OptionsBuilder()
+                    .include(LimitFlowLockBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
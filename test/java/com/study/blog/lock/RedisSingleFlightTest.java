@@ -0,0 +1,83 @@
+package com.study.blog.lock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 需要本地 Redis（application-dev.yml）
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class RedisSingleFlightTest {
+    private static final String KEY = "SINGLE_FLIGHT_TEST";
+
+    @Autowired
+    private RedisSingleFlight redisSingleFlight;
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @After
+    public void clean() {
+        redisTemplate.delete(Arrays.asList(KEY, "SINGLE_FLIGHT_LOCK:" + KEY, "SINGLE_FLIGHT_TOKEN:" + KEY,
+                "SINGLE_FLIGHT_FENCE:" + KEY));
+    }
+
+    @Test
+    public void onlyOneLoaderAcrossConcurrentCallers() throws Exception {
+        int threads = 16;
+        AtomicInteger loadCount = new AtomicInteger(0);
+        AtomicInteger hitCount = new AtomicInteger(0);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    Object value = redisSingleFlight.load(KEY, () -> redisTemplate.opsForValue().get(KEY), token -> {
+                        loadCount.incrementAndGet();
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        redisSingleFlight.fencedSet(KEY, "blog", token, 1, TimeUnit.MINUTES);
+                        return "blog";
+                    });
+                    if ("blog".equals(value)) {
+                        hitCount.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assert.assertEquals(1, loadCount.get());
+        Assert.assertEquals(threads, hitCount.get());
+    }
+
+    @Test
+    public void staleTokenCannotOverwrite() {
+        Assert.assertTrue(redisSingleFlight.fencedSet(KEY, "new", 2, 1, TimeUnit.MINUTES));
+        Assert.assertFalse(redisSingleFlight.fencedSet(KEY, "old", 1, 1, TimeUnit.MINUTES));
+        Assert.assertEquals("new", redisTemplate.opsForValue().get(KEY));
+    }
+}
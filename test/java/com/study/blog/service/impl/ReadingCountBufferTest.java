@@ -0,0 +1,97 @@
+package com.study.blog.service.impl;
+
+import com.study.blog.service.BlogEvaluationCacheService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReadingCountBufferTest {
+    private final Map<Long, Long> redis = new ConcurrentHashMap<>();
+    private final AtomicInteger batches = new AtomicInteger(0);
+    private final AtomicBoolean failing = new AtomicBoolean(false);
+    private final AtomicBoolean deferring = new AtomicBoolean(false);
+
+    /**
+     * 只实现 incrementBlogReading(Map)：模拟 Redis 中的阅读量
+     */
+    @SuppressWarnings("unchecked")
+    private BlogEvaluationCacheService fakeCacheService() {
+        return (BlogEvaluationCacheService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{BlogEvaluationCacheService.class}, (proxy, method, args) -> {
+                    if (failing.get()) {
+                        throw new IllegalStateException("redis down");
+                    }
+                    batches.incrementAndGet();
+                    Map<Long, Long> deltas = (Map<Long, Long>) args[0];
+                    Map<Long, Long> counts = new ConcurrentHashMap<>();
+                    deltas.forEach((blogId, delta) -> counts.put(blogId, deferring.get()
+                            ? BlogEvaluationCacheService.READING_DEFERRED : redis.merge(blogId, delta, Long::sum)));
+                    return counts;
+                });
+    }
+
+    @Test
+    public void concurrentViewsAreCoalescedWithoutLoss() throws Exception {
+        ReadingCountBuffer buffer = new ReadingCountBuffer(fakeCacheService(), 5);
+        int threads = 16;
+        int views = 10000;
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                for (int j = 0; j < views; j++) {
+                    buffer.increment((long) (j % 3));
+                }
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        buffer.destroy();
+        Assert.assertEquals(threads * views, redis.values().stream().mapToLong(Long::longValue).sum());
+        Assert.assertTrue(batches.get() < threads * views);
+    }
+
+    @Test
+    public void failedFlushIsRetried() throws Exception {
+        ReadingCountBuffer buffer = new ReadingCountBuffer(fakeCacheService(), TimeUnit.HOURS.toMillis(1));
+        Map<Long, Long> notified = new ConcurrentHashMap<>();
+        buffer.addListener(notified::put);
+        buffer.increment(1L);
+        buffer.increment(1L);
+        failing.set(true);
+        buffer.flush();
+        Assert.assertTrue(redis.isEmpty());
+        failing.set(false);
+        buffer.increment(1L);
+        buffer.destroy();
+        Assert.assertEquals(Long.valueOf(3), redis.get(1L));
+        Assert.assertEquals(Long.valueOf(3), notified.get(1L));
+    }
+
+    @Test
+    public void deferredBlogIsRetried() throws Exception {
+        ReadingCountBuffer buffer = new ReadingCountBuffer(fakeCacheService(), TimeUnit.HOURS.toMillis(1));
+        Map<Long, Long> notified = new ConcurrentHashMap<>();
+        buffer.addListener(notified::put);
+        buffer.increment(1L);
+        deferring.set(true);
+        buffer.flush();
+        Assert.assertTrue(redis.isEmpty());
+        Assert.assertTrue(notified.isEmpty());
+        deferring.set(false);
+        buffer.increment(1L);
+        buffer.destroy();
+        Assert.assertEquals(Long.valueOf(2), redis.get(1L));
+        Assert.assertEquals(Long.valueOf(2), notified.get(1L));
+    }
+}
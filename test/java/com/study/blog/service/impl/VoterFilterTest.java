@@ -0,0 +1,42 @@
+package com.study.blog.service.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VoterFilterTest {
+
+    @Test
+    public void noFalseNegatives() {
+        VoterFilter.Bloom bloom = new VoterFilter.Bloom(1000, 0.01);
+        for (long userId = 1; userId <= 1000; userId++) {
+            bloom.put(userId);
+        }
+        for (long userId = 1; userId <= 1000; userId++) {
+            Assert.assertTrue(bloom.mightContain(userId));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        VoterFilter.Bloom bloom = new VoterFilter.Bloom(10_000, 0.01);
+        for (long userId = 1; userId <= 10_000; userId++) {
+            bloom.put(userId);
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (long userId = 10_001; userId <= 10_000 + probes; userId++) {
+            if (bloom.mightContain(userId)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("fpp=" + (double) falsePositives / probes, falsePositives < probes * 0.02);
+    }
+
+    @Test
+    public void sizeFollowsExpectedInsertions() {
+        // 1% 误判率：约 9.6 bit / 元素
+        VoterFilter.Bloom bloom = new VoterFilter.Bloom(64, 0.01);
+        Assert.assertTrue(bloom.bytes() <= 128);
+        Assert.assertFalse(bloom.mightContain(1L));
+    }
+}